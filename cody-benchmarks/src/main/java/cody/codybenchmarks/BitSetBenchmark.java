@@ -0,0 +1,104 @@
+package cody.codybenchmarks;
+
+import ch.javasoft.bitset.BitSetFactories;
+import ch.javasoft.bitset.BitSetFactory;
+import ch.javasoft.bitset.IBitSet;
+import ch.javasoft.bitset.LongBitSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Set operations of column sets, either LongBitSets or the narrowest implementation for the number of columns
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BitSetBenchmark {
+
+    private static final int N_SETS = 1024;
+
+    @Param({"20", "60", "200"})
+    public int columns;
+
+    @Param({"long", "narrowest"})
+    public String implementation;
+
+    private IBitSet[] sets;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void createSets() {
+        BitSetFactory factory = this.implementation.equals("long") ? LongBitSet.FACTORY
+                : BitSetFactories.forCapacity(this.columns);
+        Random random = new Random(42);
+        this.sets = new IBitSet[N_SETS];
+        for (int i = 0; i < N_SETS; i++) {
+            this.sets[i] = factory.create(this.columns);
+            for (int j = 0; j < this.columns; j++)
+                if (random.nextBoolean()) this.sets[i].set(j);
+        }
+    }
+
+    private IBitSet next() {
+        this.next = (this.next + 1) & (N_SETS - 1);
+        return this.sets[this.next];
+    }
+
+    @Benchmark
+    public IBitSet getAnd() {
+        return this.next().getAnd(this.next());
+    }
+
+    @Benchmark
+    public IBitSet getOr() {
+        return this.next().getOr(this.next());
+    }
+
+    @Benchmark
+    public IBitSet cloneAndClear() {
+        IBitSet set = this.next().clone();
+        set.clear(set.nextSetBit(0) + 1);
+        return set;
+    }
+
+    @Benchmark
+    public boolean isSubSetOf() {
+        return this.next().isSubSetOf(this.next());
+    }
+
+    @Benchmark
+    public int cardinality() {
+        return this.next().cardinality();
+    }
+
+    @Benchmark
+    public int iterateSetBits() {
+        IBitSet set = this.next();
+        int sum = 0;
+        for (int i = set.nextSetBit(0); i != -1; i = set.nextSetBit(i + 1))
+            sum += i;
+        return sum;
+    }
+
+    @Benchmark
+    public int hashCodeAndEquals() {
+        IBitSet set = this.next();
+        return set.equals(this.next()) ? 0 : set.hashCode();
+    }
+}
@@ -0,0 +1,55 @@
+package cody.codybenchmarks;
+
+import ch.javasoft.bitset.BitSetFactories;
+import ch.javasoft.bitset.BitSetFactory;
+import ch.javasoft.bitset.IBitSet;
+import cody.codycore.candidate.CheckedColumnCombination;
+import cody.codycore.candidate.ColumnCombination;
+import cody.codycore.candidate.ColumnCombinationUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deriving the next lattice level of an invalid candidate whose columns are split evenly between both sides
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ColumnCombinationUtilsBenchmark {
+
+    @Param({"4", "16", "60"})
+    public int cardinality;
+
+    private CheckedColumnCombination candidate;
+
+    @Setup(Level.Trial)
+    public void createCandidate() {
+        BitSetFactory factory = BitSetFactories.forCapacity(this.cardinality);
+        IBitSet left = factory.create(this.cardinality);
+        IBitSet right = factory.create(this.cardinality);
+        for (int i = 0; i < this.cardinality; i++)
+            (i % 2 == 0 ? left : right).set(i);
+        this.candidate = new CheckedColumnCombination(new ColumnCombination(left, right), 0);
+    }
+
+    @Benchmark
+    public List<ColumnCombination> getImmediateSubsets() {
+        return ColumnCombinationUtils.getImmediateSubsets(this.candidate);
+    }
+}
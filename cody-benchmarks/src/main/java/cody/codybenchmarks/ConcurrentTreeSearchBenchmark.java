@@ -0,0 +1,178 @@
+package cody.codybenchmarks;
+
+import ch.javasoft.bitset.BitSetFactories;
+import ch.javasoft.bitset.BitSetFactory;
+import ch.javasoft.bitset.IBitSet;
+import ch.javasoft.bitset.search.ConcurrentTreeSearch;
+import ch.javasoft.bitset.search.TreeSearch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mixed inserts and superset lookups on the superset index of the lattice traversals
+ * The concurrent group runs one inserting thread next to three searching threads on a shared ConcurrentTreeSearch.
+ * The sequential benchmarks interleave one insert with three lookups on a single thread, once on a plain TreeSearch
+ * and once on an uncontended ConcurrentTreeSearch, to show the cost of the lock. Trees are refilled every iteration.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentTreeSearchBenchmark {
+
+    private static final int N_INSERTS = 1 << 16;
+    private static final int N_QUERIES = 4096;
+    private static final int QUERIES_PER_INSERT = 3;
+
+    @State(Scope.Benchmark)
+    public static class Sets {
+
+        @Param({"60"})
+        public int columns;
+
+        @Param({"1000", "100000"})
+        public int size;
+
+        IBitSet[] initial;
+        IBitSet[] inserts;
+        IBitSet[] queries;
+
+        @Setup(Level.Trial)
+        public void createSets() {
+            BitSetFactory factory = BitSetFactories.forCapacity(this.columns);
+            Random random = new Random(42);
+            int cardinality = this.columns / 2;
+            this.initial = new IBitSet[this.size];
+            for (int i = 0; i < this.size; i++)
+                this.initial[i] = this.randomSet(factory, random, cardinality);
+
+            this.inserts = new IBitSet[N_INSERTS];
+            for (int i = 0; i < N_INSERTS; i++)
+                this.inserts[i] = this.randomSet(factory, random, cardinality);
+
+            this.queries = new IBitSet[N_QUERIES];
+            for (int i = 0; i < N_QUERIES; i++) {
+                IBitSet query = i % 2 == 0 ? this.initial[random.nextInt(this.size)].clone()
+                        : this.randomSet(factory, random, cardinality);
+                int bit = query.nextSetBit(random.nextInt(this.columns));
+                query.clear(bit != -1 ? bit : query.nextSetBit(0));
+                this.queries[i] = query;
+            }
+        }
+
+        private IBitSet randomSet(BitSetFactory factory, Random random, int cardinality) {
+            IBitSet set = factory.create(this.columns);
+            while (set.cardinality() < cardinality)
+                set.set(random.nextInt(this.columns));
+            return set;
+        }
+    }
+
+    /**
+     * Index shared by the threads of a group, inserts continue through the pool of new sets
+     */
+    @State(Scope.Group)
+    public static class SharedTree {
+
+        ConcurrentTreeSearch tree;
+        AtomicInteger nextInsert;
+
+        @Setup(Level.Iteration)
+        public void fill(Sets sets) {
+            this.tree = new ConcurrentTreeSearch();
+            for (IBitSet set : sets.initial)
+                this.tree.add(set);
+            this.nextInsert = new AtomicInteger();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        int nextInsert;
+        int nextQuery;
+
+        IBitSet nextQuery(Sets sets) {
+            this.nextQuery = (this.nextQuery + 1) & (N_QUERIES - 1);
+            return sets.queries[this.nextQuery];
+        }
+
+        IBitSet nextInsert(Sets sets) {
+            this.nextInsert = (this.nextInsert + 1) & (N_INSERTS - 1);
+            return sets.inserts[this.nextInsert];
+        }
+    }
+
+    /**
+     * Indices of a single thread, filled like the shared one
+     */
+    @State(Scope.Thread)
+    public static class ThreadTrees {
+
+        TreeSearch tree;
+        ConcurrentTreeSearch concurrentTree;
+
+        @Setup(Level.Iteration)
+        public void fill(Sets sets, Cursor cursor) {
+            this.tree = new TreeSearch();
+            this.concurrentTree = new ConcurrentTreeSearch();
+            for (IBitSet set : sets.initial) {
+                this.tree.add(set);
+                this.concurrentTree.add(set);
+            }
+            cursor.nextInsert = 0;
+        }
+    }
+
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(1)
+    public boolean add(Sets sets, SharedTree shared) {
+        return shared.tree.add(sets.inserts[shared.nextInsert.getAndIncrement() & (N_INSERTS - 1)]);
+    }
+
+    @Benchmark
+    @Group("concurrent")
+    @GroupThreads(QUERIES_PER_INSERT)
+    public IBitSet findSuperSet(Sets sets, SharedTree shared, Cursor cursor) {
+        return shared.tree.findSuperSet(cursor.nextQuery(sets));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1 + QUERIES_PER_INSERT)
+    public IBitSet sequentialTreeSearch(Sets sets, ThreadTrees local, Cursor cursor) {
+        local.tree.add(cursor.nextInsert(sets));
+        IBitSet found = null;
+        for (int i = 0; i < QUERIES_PER_INSERT; i++)
+            found = local.tree.findSuperSet(cursor.nextQuery(sets));
+        return found;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1 + QUERIES_PER_INSERT)
+    public IBitSet sequentialConcurrentTreeSearch(Sets sets, ThreadTrees local, Cursor cursor) {
+        local.concurrentTree.add(cursor.nextInsert(sets));
+        IBitSet found = null;
+        for (int i = 0; i < QUERIES_PER_INSERT; i++)
+            found = local.concurrentTree.findSuperSet(cursor.nextQuery(sets));
+        return found;
+    }
+}
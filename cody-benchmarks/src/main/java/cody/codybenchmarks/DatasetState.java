@@ -0,0 +1,76 @@
+package cody.codybenchmarks;
+
+import cody.codycore.Configuration;
+import cody.codycore.generator.DatasetGenerator;
+import cody.codycore.generator.GeneratorConfiguration;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Generated dataset shared by the benchmarks, written once per trial to a temporary CSV file
+ * Half of the distinct columns form approximate Codys of two left and two right columns, so the graph has edges and
+ * candidates to check; the other half are null with the given density. A share of the columns are copies of
+ * distinct columns.
+ */
+@State(Scope.Benchmark)
+public class DatasetState {
+
+    private static final long SEED = 42;
+    private static final int ARITY = 4;
+    private static final double NOISE = 0.05;
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    @Param({"20", "60"})
+    public int columns;
+
+    @Param({"0.1", "0.5"})
+    public double nullDensity;
+
+    @Param({"0.0", "0.25"})
+    public double duplicateRatio;
+
+    public Path file;
+
+    @Setup(Level.Trial)
+    public void writeDataset() throws IOException {
+        this.file = Files.createTempFile("cody-benchmark-", ".csv");
+
+        GeneratorConfiguration configuration = new GeneratorConfiguration();
+        configuration.setSeed(SEED);
+        configuration.setRows(this.rows);
+        configuration.setColumns(this.columns);
+        configuration.setNullDensity(this.nullDensity);
+        configuration.setDuplicateRatio(this.duplicateRatio);
+        int nDistinct = Math.max(1, (int) Math.round(this.columns * (1 - this.duplicateRatio)));
+        configuration.setExactCodys(0);
+        configuration.setApproximateCodys(nDistinct / 2 / ARITY);
+        configuration.setArity(ARITY);
+        configuration.setNoise(NOISE);
+        new DatasetGenerator(configuration).writeCsv(this.file);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteDataset() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+
+    /**
+     * Create a configuration for the generated dataset
+     */
+    public Configuration createConfiguration(double minSupport) {
+        Configuration configuration = new Configuration();
+        configuration.setPath(this.file.toString());
+        configuration.setMinSupport(minSupport);
+        return configuration;
+    }
+}
@@ -0,0 +1,104 @@
+package cody.codybenchmarks;
+
+import ch.javasoft.bitset.BitSetFactories;
+import ch.javasoft.bitset.BitSetFactory;
+import ch.javasoft.bitset.IBitSet;
+import cody.codycore.candidate.CandidateFrontier;
+import cody.codycore.candidate.ColumnCombination;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Stress check of concurrent insertions into a CandidateFrontier, not a JMH benchmark
+ * Every round, many threads add the same candidates in different orders into a new frontier of the initial capacity,
+ * so the table fills up faster than single insertions grow it. The check fails if a round does not finish in time or
+ * the frontier does not hold every candidate exactly once.
+ * Usage: java -cp cody-benchmarks.jar cody.codybenchmarks.FrontierStress [threads] [candidates] [rounds]
+ */
+public class FrontierStress {
+
+    private static final int COLUMNS = 40;
+    private static final long TIMEOUT_SECONDS = 60;
+
+    public static void main(String[] args) throws Exception {
+        int nThreads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int nCandidates = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int nRounds = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        BitSetFactory factory = BitSetFactories.forCapacity(COLUMNS);
+        Random random = new Random(42);
+        Set<ColumnCombination> distinct = new HashSet<>();
+        while (distinct.size() < nCandidates)
+            distinct.add(randomCandidate(factory, random));
+        List<ColumnCombination> candidates = new ArrayList<>(distinct);
+
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        try {
+            for (int round = 0; round < nRounds; round++) {
+                boolean offHeap = round % 2 == 1;
+                CandidateFrontier frontier = new CandidateFrontier(COLUMNS, factory, offHeap);
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> futures = new ArrayList<>(nThreads);
+                for (int t = 0; t < nThreads; t++) {
+                    int offset = t * (nCandidates / nThreads);
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        for (int i = 0; i < nCandidates; i++)
+                            frontier.add(candidates.get((offset + i) % nCandidates));
+                        return null;
+                    }));
+                }
+                start.countDown();
+
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+                for (Future<?> future : futures) {
+                    try {
+                        future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    } catch (TimeoutException e) {
+                        fail("Round " + round + " did not finish within " + TIMEOUT_SECONDS + " s");
+                    }
+                }
+
+                Set<ColumnCombination> iterated = new HashSet<>();
+                long[] nIterated = {0};
+                frontier.forEachBatch(batch -> batch.forEach(candidate -> {
+                    iterated.add(candidate.getColumnCombination());
+                    nIterated[0]++;
+                }));
+                if (frontier.size() != nCandidates || nIterated[0] != nCandidates || !iterated.equals(distinct))
+                    fail("Round " + round + " holds " + frontier.size() + " candidates and iterates " + nIterated[0] +
+                            " instead of " + nCandidates);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        System.out.println("Passed " + nRounds + " rounds of " + nThreads + " threads adding " + nCandidates +
+                " candidates");
+    }
+
+    private static ColumnCombination randomCandidate(BitSetFactory factory, Random random) {
+        IBitSet left = factory.create(COLUMNS);
+        IBitSet right = factory.create(COLUMNS);
+        for (int i = 0; i < COLUMNS; i++) {
+            int side = random.nextInt(4);
+            if (side == 0) left.set(i);
+            else if (side == 1) right.set(i);
+        }
+        return new ColumnCombination(left, right);
+    }
+
+    private static void fail(String message) {
+        System.err.println(message);
+        System.exit(1);
+    }
+}
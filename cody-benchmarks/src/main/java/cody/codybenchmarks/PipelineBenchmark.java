@@ -0,0 +1,67 @@
+package cody.codybenchmarks;
+
+import cody.codycore.Preprocessor;
+import cody.codycore.Validator;
+import cody.codycore.candidate.CheckedColumnCombination;
+import cody.codycore.candidate.ColumnCombination;
+import cody.codycore.pruning.CliquePruner;
+import cody.codycore.pruning.ComponentPruner;
+import com.google.common.collect.Multimap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stages of a Cody run on generated datasets
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class PipelineBenchmark {
+
+    @Benchmark
+    public Preprocessor preprocess(DatasetState dataset) {
+        Preprocessor preprocessor = new Preprocessor(dataset.createConfiguration(PreprocessedState.MIN_SUPPORT));
+        preprocessor.run();
+        return preprocessor;
+    }
+
+    @Benchmark
+    public Validator createValidator(PreprocessedState state) {
+        return state.createValidator();
+    }
+
+    @Benchmark
+    public CheckedColumnCombination checkColumnCombination(PreprocessedState state) {
+        return state.validator.checkColumnCombination(state.nextCandidate());
+    }
+
+    @Benchmark
+    public CheckedColumnCombination checkColumnCombinationWithThreshold(PreprocessedState state) {
+        return state.validator.checkColumnCombination(state.nextCandidate(), PreprocessedState.MIN_SUPPORT);
+    }
+
+    @Benchmark
+    public Multimap<Integer, ColumnCombination> runComponentPruner(PreprocessedState state) {
+        ComponentPruner pruner = new ComponentPruner(state.validator.getGraphView(), state.configuration,
+                state.bitSetFactory);
+        pruner.run();
+        return pruner.getResultSet();
+    }
+
+    @Benchmark
+    public Multimap<Integer, ColumnCombination> runCliquePruner(PreprocessedState state) {
+        CliquePruner pruner = new CliquePruner(state.validator.getGraphView(), state.configuration,
+                state.bitSetFactory);
+        pruner.run();
+        return pruner.getResultSet();
+    }
+}
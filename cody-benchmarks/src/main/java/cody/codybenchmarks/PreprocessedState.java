@@ -0,0 +1,70 @@
+package cody.codybenchmarks;
+
+import ch.javasoft.bitset.BitSetFactories;
+import ch.javasoft.bitset.BitSetFactory;
+import cody.codycore.Configuration;
+import cody.codycore.Preprocessor;
+import cody.codycore.Validator;
+import cody.codycore.candidate.CheckedColumnCombination;
+import cody.codycore.candidate.ColumnCombination;
+import cody.codycore.candidate.ColumnCombinationUtils;
+import cody.codycore.pruning.CliquePruner;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Preprocessed generated dataset with a validator and candidates to check, built once per trial
+ * The candidates are the optimistic candidates of the clique search and their immediate subsets.
+ */
+@State(Scope.Benchmark)
+public class PreprocessedState {
+
+    public static final double MIN_SUPPORT = 0.9;
+
+    public Configuration configuration;
+    public Preprocessor preprocessor;
+    public BitSetFactory bitSetFactory;
+    public Validator validator;
+    public ColumnCombination[] candidates;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void preprocess(DatasetState dataset) {
+        this.configuration = dataset.createConfiguration(MIN_SUPPORT);
+        this.preprocessor = new Preprocessor(this.configuration);
+        this.preprocessor.run();
+        this.bitSetFactory = BitSetFactories.forCapacity(this.preprocessor.getColumnPlis().size());
+        this.validator = this.createValidator();
+
+        CliquePruner pruner = new CliquePruner(this.validator.getGraphView(), this.configuration,
+                this.bitSetFactory);
+        pruner.run();
+        List<ColumnCombination> candidates = new ArrayList<>();
+        for (ColumnCombination c : pruner.getResultSet().values()) {
+            candidates.add(c);
+            candidates.addAll(ColumnCombinationUtils.getImmediateSubsets(new CheckedColumnCombination(c, 0)));
+        }
+        if (candidates.isEmpty())
+            throw new IllegalStateException("Generated dataset has no candidates with " + MIN_SUPPORT + " support");
+        this.candidates = candidates.toArray(new ColumnCombination[0]);
+    }
+
+    public Validator createValidator() {
+        return new Validator(this.configuration, this.preprocessor.getColumnPlis(), this.preprocessor.getNRows(),
+                this.preprocessor.getRowCounts());
+    }
+
+    /**
+     * Cycle through the candidates
+     */
+    public ColumnCombination nextCandidate() {
+        ColumnCombination c = this.candidates[this.next];
+        this.next = (this.next + 1) % this.candidates.length;
+        return c;
+    }
+}
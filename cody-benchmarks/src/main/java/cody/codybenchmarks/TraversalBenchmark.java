@@ -0,0 +1,50 @@
+package cody.codybenchmarks;
+
+import cody.codycore.Configuration;
+import cody.codycore.candidate.CheckedColumnCombination;
+import cody.codycore.runner.ApproximateRunner;
+import cody.codycore.sink.ListResultSink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Complete approximate runs on generated datasets with the level-wise and the work-stealing lattice traversal
+ * Both traversals find the same Codys after the same preprocessing, so the difference is the traversal. The threads
+ * are the workers of the work-stealing pool, the level-wise traversal always uses the common pool; only a machine
+ * with at least as many cores as threads shows the scaling.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class TraversalBenchmark {
+
+    @Param({"false", "true"})
+    public boolean workStealing;
+
+    @Param({"1", "4", "8"})
+    public int threads;
+
+    @Benchmark
+    public List<CheckedColumnCombination> runApproximate(DatasetState dataset) {
+        Configuration configuration = dataset.createConfiguration(PreprocessedState.MIN_SUPPORT);
+        configuration.setWorkStealingTraversal(this.workStealing);
+        configuration.setParallelism(this.threads);
+        ListResultSink resultSink = new ListResultSink();
+        new ApproximateRunner(configuration, resultSink).run();
+        return resultSink.getResults();
+    }
+}
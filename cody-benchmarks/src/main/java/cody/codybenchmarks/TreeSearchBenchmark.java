@@ -0,0 +1,93 @@
+package cody.codybenchmarks;
+
+import ch.javasoft.bitset.BitSetFactories;
+import ch.javasoft.bitset.BitSetFactory;
+import ch.javasoft.bitset.IBitSet;
+import ch.javasoft.bitset.search.TreeSearch;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adding and looking up valid column sets, as the lattice traversal does to prune subsets of valid candidates
+ * The sets are random subsets of the given cardinality, half of the queries are subsets of an added set.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TreeSearchBenchmark {
+
+    private static final int N_QUERIES = 4096;
+
+    @Param({"20", "60"})
+    public int columns;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private IBitSet[] sets;
+    private IBitSet[] queries;
+    private TreeSearch tree;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void createSets() {
+        BitSetFactory factory = BitSetFactories.forCapacity(this.columns);
+        Random random = new Random(42);
+        int cardinality = this.columns / 2;
+        this.sets = new IBitSet[this.size];
+        for (int i = 0; i < this.size; i++)
+            this.sets[i] = randomSet(factory, random, cardinality);
+
+        this.tree = new TreeSearch();
+        for (IBitSet set : this.sets)
+            this.tree.add(set);
+
+        this.queries = new IBitSet[N_QUERIES];
+        for (int i = 0; i < N_QUERIES; i++) {
+            IBitSet query = i % 2 == 0 ? this.sets[random.nextInt(this.size)].clone()
+                    : randomSet(factory, random, cardinality);
+            int bit = query.nextSetBit(random.nextInt(this.columns));
+            query.clear(bit != -1 ? bit : query.nextSetBit(0));
+            this.queries[i] = query;
+        }
+    }
+
+    private IBitSet randomSet(BitSetFactory factory, Random random, int cardinality) {
+        IBitSet set = factory.create(this.columns);
+        while (set.cardinality() < cardinality)
+            set.set(random.nextInt(this.columns));
+        return set;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public TreeSearch add() {
+        TreeSearch tree = new TreeSearch();
+        for (int i = 0; i < 1000; i++)
+            tree.add(this.sets[i]);
+        return tree;
+    }
+
+    @Benchmark
+    public IBitSet findSuperSet() {
+        this.next = (this.next + 1) & (N_QUERIES - 1);
+        return this.tree.findSuperSet(this.queries[this.next]);
+    }
+}
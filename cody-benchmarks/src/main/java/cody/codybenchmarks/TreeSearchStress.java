@@ -0,0 +1,109 @@
+package cody.codybenchmarks;
+
+import ch.javasoft.bitset.BitSetFactories;
+import ch.javasoft.bitset.BitSetFactory;
+import ch.javasoft.bitset.IBitSet;
+import ch.javasoft.bitset.search.ConcurrentTreeSearch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stress check of a ConcurrentTreeSearch under concurrent inserts and lookups, not a JMH benchmark
+ * Every thread adds random sets in a tenth of its operations and otherwise searches supersets of small and subsets of
+ * large random sets. The check fails if the threads do not finish in time, an added set is not found right after or
+ * at the end, a returned superset or subset is wrong, or the tree holds a different number of sets.
+ * Usage: java -cp cody-benchmarks.jar cody.codybenchmarks.TreeSearchStress [threads] [operations per thread]
+ */
+public class TreeSearchStress {
+
+    private static final int COLUMNS = 200;
+    private static final long TIMEOUT_SECONDS = 120;
+
+    public static void main(String[] args) throws Exception {
+        int nThreads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int nOperations = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+        BitSetFactory factory = BitSetFactories.forCapacity(COLUMNS);
+        ConcurrentTreeSearch tree = new ConcurrentTreeSearch();
+        Set<IBitSet> added = ConcurrentHashMap.newKeySet();
+        AtomicInteger nWrong = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>(nThreads);
+            for (int t = 0; t < nThreads; t++) {
+                Random random = new Random(t);
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < nOperations; i++) {
+                        if (random.nextInt(10) == 0) {
+                            IBitSet set = randomSet(factory, random, 30);
+                            added.add(set);
+                            tree.add(set);
+                            if (tree.findSuperSet(set) == null)
+                                nWrong.incrementAndGet();
+                        } else {
+                            IBitSet query = randomSet(factory, random, 3);
+                            IBitSet superSet = tree.findSuperSet(query);
+                            if (superSet != null && !query.isSubSetOf(superSet))
+                                nWrong.incrementAndGet();
+
+                            query = randomSet(factory, random, 120);
+                            IBitSet subSet = tree.findSubSet(query);
+                            if (subSet != null && !subSet.isSubSetOf(query))
+                                nWrong.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+            for (Future<?> future : futures) {
+                try {
+                    future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    fail("Threads did not finish within " + TIMEOUT_SECONDS + " s");
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int[] nContained = {0};
+        tree.forEach(set -> nContained[0]++);
+        for (IBitSet set : added)
+            if (tree.findSuperSet(set) == null)
+                nWrong.incrementAndGet();
+
+        if (nWrong.get() > 0 || nContained[0] != added.size())
+            fail(nWrong.get() + " wrong answers, the tree holds " + nContained[0] + " of " + added.size() + " sets");
+        System.out.println("Passed " + nThreads + " threads of " + nOperations + " operations, " + added.size() +
+                " sets added");
+    }
+
+    private static IBitSet randomSet(BitSetFactory factory, Random random, int cardinality) {
+        IBitSet set = factory.create(COLUMNS);
+        for (int i = 0; i < cardinality; i++)
+            set.set(random.nextInt(COLUMNS));
+        return set;
+    }
+
+    private static void fail(String message) {
+        System.err.println(message);
+        System.exit(1);
+    }
+}
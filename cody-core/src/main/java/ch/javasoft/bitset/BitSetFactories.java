@@ -0,0 +1,24 @@
+package ch.javasoft.bitset;
+
+/**
+ * Chooses the narrowest {@link BitSetFactory} for a number of bits.
+ */
+public class BitSetFactories {
+	
+	private BitSetFactories() {
+		// static methods only
+	}
+	
+	/**
+	 * Returns the factory of the narrowest bit set implementation with room
+	 * for the given number of bits: {@link SingleLongBitSet} for up to 64,
+	 * {@link DoubleLongBitSet} for up to 128 and {@link LongBitSet} otherwise
+	 */
+	public static BitSetFactory forCapacity(int capacity) {
+		if (capacity <= SingleLongBitSet.CAPACITY)
+			return SingleLongBitSet.FACTORY;
+		if (capacity <= DoubleLongBitSet.CAPACITY)
+			return DoubleLongBitSet.FACTORY;
+		return LongBitSet.FACTORY;
+	}
+}
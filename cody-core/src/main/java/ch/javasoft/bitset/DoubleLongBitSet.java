@@ -0,0 +1,313 @@
+package ch.javasoft.bitset;
+
+import java.util.BitSet;
+
+/**
+ * The <code>DoubleLongBitSet</code> is a fixed-width {@link IBitSet} for at
+ * most 128 bits, stored in two {@code long} fields instead of an array.
+ * Setting a bit outside of this range throws an
+ * {@link IndexOutOfBoundsException}. Operations with other implementations
+ * are supported, but are only fast for instances of the same class.
+ */
+public class DoubleLongBitSet implements IBitSet {
+	
+	public static final int CAPACITY = 2 * Long.SIZE;
+	
+	public static final DoubleLongBitSetFactory FACTORY = new DoubleLongBitSetFactory();
+	
+	/**
+	 * <code>DoubleLongBitSetFactory</code> is the {@link BitSetFactory} for
+	 * {@code DoubleLongBitSet} instances.
+	 */
+	public static final class DoubleLongBitSetFactory implements BitSetFactory {
+		public DoubleLongBitSet create() {
+			return new DoubleLongBitSet();
+		}
+
+		public DoubleLongBitSet create(int capacity) {
+			if (capacity > CAPACITY)
+				throw new IllegalArgumentException("capacity " + capacity + " exceeds " + CAPACITY + " bits");
+			return new DoubleLongBitSet();
+		}
+
+		public DoubleLongBitSet create(IBitSet bits) {
+			checkLength(bits.length());
+			return new DoubleLongBitSet(unit(bits, 0), unit(bits, 1));
+		}
+
+		public DoubleLongBitSet convert(IBitSet bitSet) {
+			return bitSet instanceof DoubleLongBitSet ? (DoubleLongBitSet) bitSet
+					: create(bitSet);
+		}
+
+		public DoubleLongBitSet create(BitSet bits) {
+			checkLength(bits.length());
+			final long[] units = bits.toLongArray();
+			return new DoubleLongBitSet(units.length > 0 ? units[0] : 0L, units.length > 1 ? units[1] : 0L);
+		}
+
+		public Class<DoubleLongBitSet> getBitSetClass() {
+			return DoubleLongBitSet.class;
+		}
+	};
+	
+	private long mLow, mHigh;
+	
+	/**
+	 * Creates an empty bit set
+	 */
+	public DoubleLongBitSet() {
+		this(0L, 0L);
+	}
+	
+	/**
+	 * Creates a bit set with the bits 0-63 in {@code low} and the bits 64-127
+	 * in {@code high}
+	 */
+	public DoubleLongBitSet(long low, long high) {
+		mLow	= low;
+		mHigh	= high;
+	}
+	
+	private static void checkLength(int length) {
+		if (length > CAPACITY)
+			throw new IndexOutOfBoundsException("bit " + (length - 1) + " exceeds " + CAPACITY + " bits");
+	}
+	
+	/**
+	 * Returns the bits {@code 64 * index} to {@code 64 * index + 63} of the 
+	 * given set as a unit, bits outside of the capacity are ignored
+	 */
+	private static long unit(IBitSet bits, int index) {
+		if (bits instanceof DoubleLongBitSet) {
+			final DoubleLongBitSet set = (DoubleLongBitSet) bits;
+			return index == 0 ? set.mLow : set.mHigh;
+		}
+		final int from = index * Long.SIZE;
+		long unit = 0L;
+		for (int bit = bits.nextSetBit(from); bit >= 0 && bit < from + Long.SIZE; bit = bits.nextSetBit(bit + 1)) {
+			unit |= 1L << bit;
+		}
+		return unit;
+	}
+	
+	private static long low(IBitSet bits) {
+		return unit(bits, 0);
+	}
+	
+	private static long high(IBitSet bits) {
+		return unit(bits, 1);
+	}
+	
+	/**
+	 * Like {@link #high(IBitSet)}, but bits outside of the capacity cause an
+	 * exception
+	 */
+	private static long highStrict(IBitSet bits) {
+		if (!(bits instanceof DoubleLongBitSet))
+			checkLength(bits.length());
+		return unit(bits, 1);
+	}
+	
+	private static void checkBit(int bit) {
+		if (bit < 0 || bit >= CAPACITY)
+			throw new IndexOutOfBoundsException("bit " + bit + " exceeds " + CAPACITY + " bits");
+	}
+
+	public void set(int bit) {
+		checkBit(bit);
+		if (bit < Long.SIZE)
+			mLow |= 1L << bit;
+		else
+			mHigh |= 1L << bit;
+	}
+
+	public void set(int bit, boolean value) {
+		if (value)
+			set(bit);
+		else
+			clear(bit);
+	}
+
+	public void clear(int bit) {
+		if (bit >= CAPACITY)
+			return;
+		checkBit(bit);
+		if (bit < Long.SIZE)
+			mLow &= ~(1L << bit);
+		else
+			mHigh &= ~(1L << bit);
+	}
+
+	public void clear() {
+		mLow	= 0L;
+		mHigh	= 0L;
+	}
+
+	public void flip(int bit) {
+		checkBit(bit);
+		if (bit < Long.SIZE)
+			mLow ^= 1L << bit;
+		else
+			mHigh ^= 1L << bit;
+	}
+
+	public boolean get(int bit) {
+		if (bit >= CAPACITY)
+			return false;
+		checkBit(bit);
+		return ((bit < Long.SIZE ? mLow : mHigh) & (1L << bit)) != 0;
+	}
+
+	public boolean isSubSetOf(IBitSet of) {
+		return (mLow & ~low(of)) == 0 && (mHigh & ~high(of)) == 0;
+	}
+
+	public boolean isSuperSetOfIntersection(IBitSet interA, IBitSet interB) {
+		return (low(interA) & low(interB) & ~mLow) == 0 && (high(interA) & high(interB) & ~mHigh) == 0;
+	}
+
+	public void and(IBitSet with) {
+		mLow	&= low(with);
+		mHigh	&= high(with);
+	}
+
+	public int getAndCardinality(IBitSet with) {
+		return Long.bitCount(mLow & low(with)) + Long.bitCount(mHigh & high(with));
+	}
+
+	public DoubleLongBitSet getAnd(IBitSet with) {
+		return new DoubleLongBitSet(mLow & low(with), mHigh & high(with));
+	}
+
+	public void andNot(IBitSet with) {
+		mLow	&= ~low(with);
+		mHigh	&= ~high(with);
+	}
+
+	public DoubleLongBitSet getAndNot(IBitSet with) {
+		return new DoubleLongBitSet(mLow & ~low(with), mHigh & ~high(with));
+	}
+
+	public void or(IBitSet with) {
+		final long high = highStrict(with);
+		mLow	|= low(with);
+		mHigh	|= high;
+	}
+
+	public DoubleLongBitSet getOr(IBitSet with) {
+		return new DoubleLongBitSet(mLow | low(with), mHigh | highStrict(with));
+	}
+
+	public void xor(IBitSet with) {
+		final long high = highStrict(with);
+		mLow	^= low(with);
+		mHigh	^= high;
+	}
+
+	public DoubleLongBitSet getXor(IBitSet with) {
+		return new DoubleLongBitSet(mLow ^ low(with), mHigh ^ highStrict(with));
+	}
+
+	public int getXorCardinality(IBitSet with) {
+		return Long.bitCount(mLow ^ low(with)) + Long.bitCount(mHigh ^ highStrict(with));
+	}
+
+	public int length() {
+		return mHigh != 0 ? CAPACITY - Long.numberOfLeadingZeros(mHigh)
+				: Long.SIZE - Long.numberOfLeadingZeros(mLow);
+	}
+
+	public int cardinality() {
+		return Long.bitCount(mLow) + Long.bitCount(mHigh);
+	}
+
+	public int cardinality(int fromBit, int toBit) {
+		int card = 0;
+		for (int bit = nextSetBit(fromBit); bit >= 0 && bit < toBit; bit = nextSetBit(bit + 1)) {
+			card++;
+		}
+		return card;
+	}
+
+	public int nextSetBit(int from) {
+		from = Math.max(0, from);
+		if (from < Long.SIZE) {
+			final long unit = mLow & (-1L << from);
+			if (unit != 0)
+				return Long.numberOfTrailingZeros(unit);
+			from = Long.SIZE;
+		}
+		if (from < CAPACITY) {
+			final long unit = mHigh & (-1L << from);
+			if (unit != 0)
+				return Long.SIZE + Long.numberOfTrailingZeros(unit);
+		}
+		return -1;
+	}
+
+	public int nextClearBit(int from) {
+		from = Math.max(0, from);
+		if (from < Long.SIZE) {
+			final long unit = ~mLow & (-1L << from);
+			if (unit != 0)
+				return Long.numberOfTrailingZeros(unit);
+			from = Long.SIZE;
+		}
+		if (from < CAPACITY) {
+			final long unit = ~mHigh & (-1L << from);
+			return unit == 0 ? CAPACITY : Long.SIZE + Long.numberOfTrailingZeros(unit);
+		}
+		return from;
+	}
+
+	/**
+	 * Compares like {@link LongBitSet#compareTo(LongBitSet)}: the first 
+	 * differing bit, starting at bit 0, decides and the set containing it is 
+	 * the greater one
+	 */
+	public int compareTo(IBitSet o) {
+		long diff = mLow ^ low(o);
+		if (diff != 0)
+			return (mLow & Long.lowestOneBit(diff)) != 0 ? 1 : -1;
+		diff = mHigh ^ high(o);
+		if (diff != 0)
+			return (mHigh & Long.lowestOneBit(diff)) != 0 ? 1 : -1;
+		return o.length() > CAPACITY ? -1 : 0;
+	}
+
+	@Override
+	public DoubleLongBitSet clone() {
+		return new DoubleLongBitSet(mLow, mHigh);
+	}
+
+	public BitSet toBitSet() {
+		return BitSet.valueOf(new long[] {mLow, mHigh});
+	}
+
+	public BitSetFactory factory() {
+		return FACTORY;
+	}
+
+	@Override
+	public int hashCode() {
+		// same as the hash code of a LongBitSet with the same bits
+		return (int) (mLow ^ (mLow >>> 32) ^ mHigh ^ (mHigh >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this)
+			return true;
+		if (obj instanceof DoubleLongBitSet) {
+			final DoubleLongBitSet set = (DoubleLongBitSet) obj;
+			return mLow == set.mLow && mHigh == set.mHigh;
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return toBitSet().toString();
+	}
+}
@@ -0,0 +1,253 @@
+package ch.javasoft.bitset;
+
+import java.util.BitSet;
+
+/**
+ * The <code>SingleLongBitSet</code> is a fixed-width {@link IBitSet} for at
+ * most 64 bits, stored in a single {@code long} field instead of an array.
+ * Setting a bit outside of this range throws an
+ * {@link IndexOutOfBoundsException}. Operations with other implementations
+ * are supported, but are only fast for instances of the same class.
+ */
+public class SingleLongBitSet implements IBitSet {
+	
+	public static final int CAPACITY = Long.SIZE;
+	
+	public static final SingleLongBitSetFactory FACTORY = new SingleLongBitSetFactory();
+	
+	/**
+	 * <code>SingleLongBitSetFactory</code> is the {@link BitSetFactory} for
+	 * {@code SingleLongBitSet} instances.
+	 */
+	public static final class SingleLongBitSetFactory implements BitSetFactory {
+		public SingleLongBitSet create() {
+			return new SingleLongBitSet();
+		}
+
+		public SingleLongBitSet create(int capacity) {
+			if (capacity > CAPACITY)
+				throw new IllegalArgumentException("capacity " + capacity + " exceeds " + CAPACITY + " bits");
+			return new SingleLongBitSet();
+		}
+
+		public SingleLongBitSet create(IBitSet bits) {
+			return new SingleLongBitSet(unit(bits, true));
+		}
+
+		public SingleLongBitSet convert(IBitSet bitSet) {
+			return bitSet instanceof SingleLongBitSet ? (SingleLongBitSet) bitSet
+					: create(bitSet);
+		}
+
+		public SingleLongBitSet create(BitSet bits) {
+			if (bits.length() > CAPACITY)
+				throw new IndexOutOfBoundsException("bit " + (bits.length() - 1) + " exceeds " + CAPACITY + " bits");
+			return new SingleLongBitSet(bits.isEmpty() ? 0L : bits.toLongArray()[0]);
+		}
+
+		public Class<SingleLongBitSet> getBitSetClass() {
+			return SingleLongBitSet.class;
+		}
+	};
+	
+	private long mUnit;
+	
+	/**
+	 * Creates an empty bit set
+	 */
+	public SingleLongBitSet() {
+		this(0L);
+	}
+	
+	/**
+	 * Creates a bit set with the bits of the given unit
+	 */
+	public SingleLongBitSet(long unit) {
+		mUnit = unit;
+	}
+	
+	/**
+	 * Returns the bits of the given set as a single unit
+	 * 
+	 * @param strict	if true, bits outside of the capacity cause an 
+	 * 					exception, otherwise they are ignored
+	 */
+	private static long unit(IBitSet bits, boolean strict) {
+		if (bits instanceof SingleLongBitSet) {
+			return ((SingleLongBitSet) bits).mUnit;
+		}
+		if (strict && bits.length() > CAPACITY) {
+			throw new IndexOutOfBoundsException("bit " + (bits.length() - 1) + " exceeds " + CAPACITY + " bits");
+		}
+		long unit = 0L;
+		for (int bit = bits.nextSetBit(0); bit >= 0 && bit < CAPACITY; bit = bits.nextSetBit(bit + 1)) {
+			unit |= 1L << bit;
+		}
+		return unit;
+	}
+	
+	private static long mask(int bit) {
+		if (bit < 0 || bit >= CAPACITY)
+			throw new IndexOutOfBoundsException("bit " + bit + " exceeds " + CAPACITY + " bits");
+		return 1L << bit;
+	}
+
+	public void set(int bit) {
+		mUnit |= mask(bit);
+	}
+
+	public void set(int bit, boolean value) {
+		if (value)
+			set(bit);
+		else
+			clear(bit);
+	}
+
+	public void clear(int bit) {
+		if (bit < CAPACITY)
+			mUnit &= ~mask(bit);
+	}
+
+	public void clear() {
+		mUnit = 0L;
+	}
+
+	public void flip(int bit) {
+		mUnit ^= mask(bit);
+	}
+
+	public boolean get(int bit) {
+		return bit < CAPACITY && (mUnit & mask(bit)) != 0;
+	}
+
+	public boolean isSubSetOf(IBitSet of) {
+		if (of instanceof SingleLongBitSet)
+			return (mUnit & ~((SingleLongBitSet) of).mUnit) == 0;
+		return (mUnit & ~unit(of, false)) == 0;
+	}
+
+	public boolean isSuperSetOfIntersection(IBitSet interA, IBitSet interB) {
+		return (unit(interA, false) & unit(interB, false) & ~mUnit) == 0;
+	}
+
+	public void and(IBitSet with) {
+		mUnit &= unit(with, false);
+	}
+
+	public int getAndCardinality(IBitSet with) {
+		return Long.bitCount(mUnit & unit(with, false));
+	}
+
+	public SingleLongBitSet getAnd(IBitSet with) {
+		return new SingleLongBitSet(mUnit & unit(with, false));
+	}
+
+	public void andNot(IBitSet with) {
+		mUnit &= ~unit(with, false);
+	}
+
+	public SingleLongBitSet getAndNot(IBitSet with) {
+		return new SingleLongBitSet(mUnit & ~unit(with, false));
+	}
+
+	public void or(IBitSet with) {
+		mUnit |= unit(with, true);
+	}
+
+	public SingleLongBitSet getOr(IBitSet with) {
+		return new SingleLongBitSet(mUnit | unit(with, true));
+	}
+
+	public void xor(IBitSet with) {
+		mUnit ^= unit(with, true);
+	}
+
+	public SingleLongBitSet getXor(IBitSet with) {
+		return new SingleLongBitSet(mUnit ^ unit(with, true));
+	}
+
+	public int getXorCardinality(IBitSet with) {
+		return Long.bitCount(mUnit ^ unit(with, true));
+	}
+
+	public int length() {
+		return CAPACITY - Long.numberOfLeadingZeros(mUnit);
+	}
+
+	public int cardinality() {
+		return Long.bitCount(mUnit);
+	}
+
+	public int cardinality(int fromBit, int toBit) {
+		fromBit = Math.max(0, fromBit);
+		toBit = Math.min(CAPACITY, toBit);
+		if (fromBit >= toBit)
+			return 0;
+		final long upper = toBit == CAPACITY ? -1L : (1L << toBit) - 1;
+		return Long.bitCount(mUnit & upper & (-1L << fromBit));
+	}
+
+	public int nextSetBit(int from) {
+		from = Math.max(0, from);
+		if (from >= CAPACITY)
+			return -1;
+		final long unit = mUnit & (-1L << from);
+		return unit == 0 ? -1 : Long.numberOfTrailingZeros(unit);
+	}
+
+	public int nextClearBit(int from) {
+		from = Math.max(0, from);
+		if (from >= CAPACITY)
+			return from;
+		final long unit = ~mUnit & (-1L << from);
+		return unit == 0 ? CAPACITY : Long.numberOfTrailingZeros(unit);
+	}
+
+	/**
+	 * Compares like {@link LongBitSet#compareTo(LongBitSet)}: the first 
+	 * differing bit, starting at bit 0, decides and the set containing it is 
+	 * the greater one
+	 */
+	public int compareTo(IBitSet o) {
+		final long diff = mUnit ^ unit(o, false);
+		if (diff == 0)
+			return o.length() > CAPACITY ? -1 : 0;
+		return (mUnit & Long.lowestOneBit(diff)) != 0 ? 1 : -1;
+	}
+
+	@Override
+	public SingleLongBitSet clone() {
+		return new SingleLongBitSet(mUnit);
+	}
+
+	public BitSet toBitSet() {
+		return BitSet.valueOf(new long[] {mUnit});
+	}
+
+	public BitSetFactory factory() {
+		return FACTORY;
+	}
+	
+	/**
+	 * Returns the bits as a single unit
+	 */
+	public long toLong() {
+		return mUnit;
+	}
+
+	@Override
+	public int hashCode() {
+		// same as the hash code of a LongBitSet with the same bits
+		return (int) (mUnit ^ (mUnit >>> 32));
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj == this || obj instanceof SingleLongBitSet && ((SingleLongBitSet) obj).mUnit == mUnit;
+	}
+
+	@Override
+	public String toString() {
+		return toBitSet().toString();
+	}
+}
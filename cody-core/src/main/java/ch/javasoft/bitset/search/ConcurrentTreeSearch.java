@@ -0,0 +1,143 @@
+package ch.javasoft.bitset.search;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import ch.javasoft.bitset.IBitSet;
+
+/**
+ * The <code>ConcurrentTreeSearch</code> is a thread-safe {@link TreeSearch}.
+ * Adding a set modifies the nodes of the bit pattern tree in place, so all
+ * modifications hold a write lock, while any number of searches may run 
+ * concurrently under the read lock. This suits lattice traversals, where
+ * sets are searched far more often than added.
+ * <p>
+ * Added sets must not be modified afterwards, as for {@link TreeSearch}.
+ */
+public class ConcurrentTreeSearch implements SuperSetSearch, SubSetSearch {
+	
+	private final TreeSearch tree = new TreeSearch();
+	private final Lock readLock, writeLock;
+	
+	public ConcurrentTreeSearch() {
+		final ReadWriteLock lock = new ReentrantReadWriteLock();
+		readLock	= lock.readLock();
+		writeLock	= lock.writeLock();
+	}
+	
+	/**
+	 * Adds the given set to the structure, or returns false if such a set is
+	 * already contained within this search set
+	 *  
+	 * @param set	the set to add
+	 * @return true if it has been added, and false if it was already contained
+	 * 				in the structure
+	 */
+	public boolean add(IBitSet set) {
+		writeLock.lock();
+		try {
+			return tree.add(set);
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes the specified set from the structure and returns true if such
+	 * as set was found and removed. False indicates that no set was found and
+	 * the structure was not modified.
+	 * 
+	 * @param set	the set to remove
+	 * @return	true if the structure was modified.
+	 */
+	public boolean remove(IBitSet set) {
+		writeLock.lock();
+		try {
+			return tree.remove(set);
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	public IBitSet findSuperSet(IBitSet of) {
+		readLock.lock();
+		try {
+			return tree.findSuperSet(of);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	public IBitSet findSuperSet(IBitSet of, int without) {
+		readLock.lock();
+		try {
+			return tree.findSuperSet(of, without);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	public IBitSet findSuperSet(IBitSet of, IBitSet after) {
+		readLock.lock();
+		try {
+			return tree.findSuperSet(of, after);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+	
+	public IBitSet findSubSet(IBitSet of) {
+		readLock.lock();
+		try {
+			return tree.findSubSet(of);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+	
+	public IBitSet findSubSet(IBitSet of, IBitSet after) {
+		readLock.lock();
+		try {
+			return tree.findSubSet(of, after);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+	
+	/**
+	 * Passes all sets to the consumer while holding the read lock, the 
+	 * consumer must not add or remove sets
+	 */
+	public void forEach(Consumer<IBitSet> consumer) {
+		readLock.lock();
+		try {
+			tree.forEach(consumer);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Passes all subsets of the given set to the consumer while holding the
+	 * read lock, the consumer must not add or remove sets
+	 */
+	public void forEachSubSet(IBitSet of, Consumer<IBitSet> consumer) {
+		readLock.lock();
+		try {
+			tree.forEachSubSet(of, consumer);
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+}
@@ -3,9 +3,18 @@ package cody.codycore;
 import cody.codycore.runner.ApproximateRunner;
 import cody.codycore.runner.BaseRunner;
 import cody.codycore.runner.ExactRunner;
+import cody.codycore.sink.FileResultSink;
+import cody.codycore.sink.LogResultSink;
+import cody.codycore.sink.ResultSink;
+import cody.codycore.sink.ResultSinkException;
 import com.beust.jcommander.JCommander;
+import com.beust.jcommander.ParameterException;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+
 @Slf4j
 public class App {
 
@@ -14,22 +23,61 @@ public class App {
         JCommander cliParser = JCommander.newBuilder()
                 .addObject(config)
                 .build();
-        cliParser.parse(args);
+        try {
+            cliParser.parse(args);
+        } catch (ParameterException e) {
+            log.error("Invalid parameters: {}. Now exiting.", e.getMessage());
+            System.exit(1);
+        }
 
         if (config.isHelp()) {
             cliParser.usage();
             System.exit(0);
         }
 
-        BaseRunner runner;
-        if (config.getMinSupport() == 1.0) {
-            runner = new ExactRunner(config);
-        } else if (config.getMinSupport() < 1.0 && config.getMinSupport() > 2.0 / 3.0) {
-            runner = new ApproximateRunner(config);
-        } else {
-            throw new IllegalArgumentException("Cannot run with the set minimum support");
+        if (config.isWorkStealingTraversal() && config.hasBudget()) {
+            // the traversal goes deep before checking the large candidates, so a partial result is rarely maximal
+            log.error("Invalid parameters: --work-stealing cannot be combined with --time-budget or --memory-budget. " +
+                    "Now exiting.");
+            System.exit(1);
+        }
+
+        try (ResultSink resultSink = createResultSink(config)) {
+            BaseRunner runner;
+            if (config.getMinSupport() == 1.0) {
+                runner = new ExactRunner(config, resultSink);
+            } else if (config.getMinSupport() < 1.0 && config.getMinSupport() > 2.0 / 3.0) {
+                runner = new ApproximateRunner(config, resultSink);
+            } else {
+                throw new IllegalArgumentException("Cannot run with the set minimum support");
+            }
+
+            runner.run();
+            if (config.getMetricsPath() != null)
+                writeMetrics(runner, config);
+        } catch (IOException | ResultSinkException e) {
+            // only creating, writing and closing the sink throw these
+            log.error("Fatal error writing {}. Now exiting.", config.getOutputPath(), e);
+            System.exit(1);
+        } catch (UncheckedIOException e) {
+            log.error("Fatal error: {}. Now exiting.", e.getMessage(), e);
+            System.exit(1);
+        }
+    }
+
+    private static void writeMetrics(BaseRunner runner, Configuration config) {
+        try {
+            runner.getMetrics().write(Paths.get(config.getMetricsPath()));
+        } catch (IOException e) {
+            log.error("Fatal error writing {}. Now exiting.", config.getMetricsPath(), e);
+            System.exit(1);
         }
+    }
+
+    private static ResultSink createResultSink(Configuration config) throws IOException {
+        if (config.getOutputPath() == null)
+            return new LogResultSink();
 
-        runner.run();
+        return new FileResultSink(Paths.get(config.getOutputPath()), config.getOutputFormat());
     }
 }
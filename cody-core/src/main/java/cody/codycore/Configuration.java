@@ -1,14 +1,18 @@
 package cody.codycore;
 
+import cody.codycore.ingest.ChunkedCsvReader;
+import cody.codycore.sink.FileResultSink;
+import com.beust.jcommander.IParameterValidator;
 import com.beust.jcommander.IStringConverter;
 import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
 import lombok.Data;
 
 @Data
 public class Configuration {
 
-    @Parameter(names = {"--path", "-p"}, description = "Relative Path to the CSV file containing the dataset",
-            required = true)
+    @Parameter(names = {"--path", "-p"}, description = "Relative Path to the CSV file containing the dataset " +
+            "or to a PLI snapshot (.pli) written by the generator", required = true)
     String path;
 
     @Parameter(names = {"--del", "-d"}, description = "Delimiter used in the dataset", converter =
@@ -40,9 +44,113 @@ public class Configuration {
     @Parameter(names = {"--no-cliques"}, description = "Disable clique search for approximate Cody discovery")
     boolean noCliqueSearch = false;
 
+    @Parameter(names = {"--parallel-cliques"}, description = "Enumerate cliques of independent top-level branches " +
+            "in parallel")
+    boolean parallelCliqueSearch = false;
+
+    @Parameter(names = {"--parallel-ingest"}, description = "Memory-map the dataset and parse newline-aligned " +
+            "chunks in parallel (ignored if a row limit is set)")
+    boolean parallelIngest = false;
+
+    @Parameter(names = {"--fast-null-scan"}, description = "Detect null values on the raw bytes without parsing " +
+            "cells into Strings (implies --parallel-ingest)")
+    boolean fastNullScan = false;
+
+    @Parameter(names = {"--chunk-size"}, description = "Target size in bytes of a chunk for parallel ingestion, " +
+            "at most 1 GB", validateWith = ChunkSizeValidator.class)
+    int chunkSize = 64 * 1024 * 1024;
+
+    @Parameter(names = {"--threads"}, description = "Number of worker threads used by parallel stages, e.g. ingestion, " +
+            "building the PLI matrix and clique search", validateWith = PositiveValidator.class)
+    int parallelism = Runtime.getRuntime().availableProcessors();
+
+    @Parameter(names = {"--cache-dir"}, description = "Directory for binary PLI snapshots, reused by later runs " +
+            "on the same dataset with the same parser options")
+    String cacheDirectory = null;
+
+    @Parameter(names = {"--pli-cache"}, description = "Maximum total size in MB of cached pairwise PLIs and " +
+            "partial intersections, split evenly between them, which are recomputed when evicted (-1 for a quarter " +
+            "of the max heap in total)")
+    long pliCacheSize = -1;
+
+    @Parameter(names = {"--off-heap-plis"}, description = "Keep the run-optimized column and pairwise PLIs in " +
+            "direct memory instead of the heap (limited by -XX:MaxDirectMemorySize)")
+    boolean offHeapPlis = false;
+
+    @Parameter(names = {"--work-stealing"}, description = "Traverse the lattice with fork-join tasks that check the " +
+            "subsets of an invalid candidate right away instead of level by level, cannot be combined with a time or " +
+            "memory budget")
+    boolean workStealingTraversal = false;
+
+    @Parameter(names = {"--off-heap-frontier"}, description = "Keep the candidates of the lattice traversal in " +
+            "direct memory instead of the heap (limited by -XX:MaxDirectMemorySize)")
+    boolean offHeapFrontier = false;
+
+    @Parameter(names = {"--spill-threshold"}, description = "Write the candidates of a lattice level to sorted " +
+            "temporary files whenever more than this many are held in memory (-1 to never spill)")
+    long spillThreshold = -1;
+
+    @Parameter(names = {"--spill-dir"}, description = "Directory of the spilled candidate files (default: the " +
+            "system's temporary directory)")
+    String spillDirectory = null;
+
+    @Parameter(names = {"--time-budget"}, description = "Stop the approximate lattice traversal after this many ms " +
+            "since the start of the run, including reading and preprocessing, and return the Codys found so far " +
+            "(-1 for no limit)")
+    long timeBudget = -1;
+
+    @Parameter(names = {"--memory-budget"}, description = "Stop the approximate lattice traversal once more than " +
+            "this many MB of heap are still in use after a garbage collection and return the Codys found so far " +
+            "(-1 for no limit)")
+    long memoryBudget = -1;
+
+    @Parameter(names = {"--output", "-o"}, description = "Write the Codys to this file as soon as they are confirmed " +
+            "instead of logging them")
+    String outputPath = null;
+
+    @Parameter(names = {"--output-format"}, description = "Format of the output file, one line per Cody")
+    FileResultSink.Format outputFormat = FileResultSink.Format.CSV;
+
+    @Parameter(names = {"--metrics"}, description = "Write timings, memory usage and candidate counts of the run " +
+            "as JSON to this file")
+    String metricsPath = null;
+
     @Parameter(names = {"--help", "-h"}, description = "Show this help page", help = true)
     boolean help;
 
+    /**
+     * Indicates if a time or memory budget is set
+     */
+    public boolean hasBudget() {
+        return this.timeBudget >= 0 || this.memoryBudget >= 0;
+    }
+
+    public static class PositiveValidator implements IParameterValidator {
+        @Override
+        public void validate(String name, String value) {
+            if (parseInt(name, value) <= 0)
+                throw new ParameterException("Parameter " + name + " must be positive, but was " + value);
+        }
+    }
+
+    public static class ChunkSizeValidator implements IParameterValidator {
+        @Override
+        public void validate(String name, String value) {
+            int chunkSize = parseInt(name, value);
+            if (chunkSize <= 0 || chunkSize > ChunkedCsvReader.MAX_CHUNK_SIZE)
+                throw new ParameterException("Parameter " + name + " must be between 1 and " +
+                        ChunkedCsvReader.MAX_CHUNK_SIZE + " bytes, but was " + value);
+        }
+    }
+
+    private static int parseInt(String name, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ParameterException("Parameter " + name + " must be an integer, but was " + value);
+        }
+    }
+
     public static class StringToCharConverter implements IStringConverter<Character> {
         @Override
         public Character convert(String str) {
@@ -0,0 +1,50 @@
+package cody.codycore;
+
+import cody.codycore.candidate.ColumnCombination;
+import cody.codycore.generator.DatasetGenerator;
+import cody.codycore.generator.GeneratorConfiguration;
+import com.beust.jcommander.JCommander;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+@Slf4j
+public class GeneratorApp {
+
+    public static void main(String[] args) {
+        GeneratorConfiguration config = new GeneratorConfiguration();
+        JCommander cliParser = JCommander.newBuilder()
+                .addObject(config)
+                .build();
+        cliParser.parse(args);
+
+        if (config.isHelp()) {
+            cliParser.usage();
+            System.exit(0);
+        }
+
+        DatasetGenerator generator = new DatasetGenerator(config);
+        for (ColumnCombination c : generator.getExactCodys())
+            log.info("Planted exact Cody: {}", c);
+        for (ColumnCombination c : generator.getApproximateCodys())
+            log.info("Planted approximate Cody: {}", c);
+
+        long startTime = System.currentTimeMillis();
+        Path file = Paths.get(config.getOutputPath());
+        try {
+            if (config.getFormat() == DatasetGenerator.Format.CSV) {
+                generator.writeCsv(file);
+            } else {
+                generator.writeSnapshot(file);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.error("Fatal error writing {}. Now exiting.", file, e);
+            System.exit(1);
+        }
+        log.info("Generated {} rows and {} columns in {} ms", config.getRows(), config.getColumns(),
+                System.currentTimeMillis() - startTime);
+    }
+}
@@ -2,14 +2,16 @@ package cody.codycore;
 
 import cody.codycore.candidate.CheckedColumnCombination;
 import cody.codycore.candidate.ColumnCombination;
+import cody.codycore.ingest.ChunkedCsvReader;
+import cody.codycore.ingest.FrozenPlis;
+import cody.codycore.ingest.NullPatternDeduplicator;
+import cody.codycore.ingest.PliSnapshot;
+import cody.codycore.jfr.CodyEvents;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.MultimapBuilder;
 import com.univocity.parsers.csv.CsvParser;
 import com.univocity.parsers.csv.CsvParserSettings;
-import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.ints.IntList;
-import it.unimi.dsi.fastutil.objects.Object2IntLinkedOpenHashMap;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
@@ -20,7 +22,10 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -29,13 +34,14 @@ import java.util.stream.IntStream;
 public class Preprocessor {
 
     private final Configuration configuration;
-    private final Object2IntLinkedOpenHashMap<IntList> rowDeduplicator;
+    private NullPatternDeduplicator rowDeduplicator;
+    private long[] nullMask;
     private List<MutableRoaringBitmap> columnPlisMutable;
     private int nRowsDistinct;
 
     /**
      * Contains a PLIs per column, a bit in PLI is set to true if cell for that row is null
-     * Immutable representation of columnPlisMutable for performance reasons
+     * Compacted PLIs, with --off-heap-plis views on one direct buffer (see FrozenPlis), or views on a snapshot
      */
     @Getter private List<ImmutableRoaringBitmap> columnPlis;
 
@@ -59,26 +65,141 @@ public class Preprocessor {
      */
     @Getter private int[] rowCounts;
 
+    /**
+     * Serialized size in bytes of the column PLIs before compaction
+     */
+    @Getter private long columnPliBytes;
+
+    /**
+     * Serialized size in bytes of the column PLIs after compaction
+     */
+    @Getter private long compactedColumnPliBytes;
+
     public Preprocessor(@NonNull Configuration configuration) {
         this.configuration = configuration;
-        this.rowDeduplicator = new Object2IntLinkedOpenHashMap<>();
         this.nRows = 0;
         this.nRowsDistinct = 0;
     }
 
     /**
-     * Read the dataset, deduplicate rows and columns
+     * Read the dataset, deduplicate rows and columns, or load a valid snapshot if a cache directory is set
+     * A path to a snapshot file (e.g. of a generated dataset) is loaded directly.
      * When finished, results can be retrieved with respective getters
      */
     public void run() {
-        CsvParser parser = this.initializeParser();
+        if (this.configuration.getPath().endsWith(PliSnapshot.SUFFIX)) {
+            this.runSnapshot();
+        } else if (this.configuration.getCacheDirectory() != null) {
+            this.runCached();
+        } else {
+            this.runUncached();
+        }
+    }
+
+    private void runSnapshot() {
+        Path file = Paths.get(this.configuration.getPath());
+        PliSnapshot snapshot = PliSnapshot.load(file);
+        if (snapshot == null) {
+            log.error("Fatal error reading {}. Now exiting.", file);
+            System.exit(1);
+            return;
+        }
+
+        this.setSnapshot(snapshot);
+        log.info("Loaded {} distinct rows and {} columns from snapshot {}", this.rowCounts.length,
+                this.columnPlis.size(), file);
+    }
+
+    private void runCached() {
+        String key;
+        try {
+            key = PliSnapshot.createKey(this.configuration);
+        } catch (IOException e) {
+            log.error("Fatal error reading {}. Now exiting.", this.configuration.getPath(), e);
+            System.exit(1);
+            return;
+        }
+
+        Path file = PliSnapshot.resolveFile(Paths.get(this.configuration.getCacheDirectory()), this.configuration, key);
+        PliSnapshot snapshot = PliSnapshot.load(file, key);
+        if (snapshot != null) {
+            this.setSnapshot(snapshot);
+            log.info("Loaded {} distinct rows and {} columns from snapshot {}", this.rowCounts.length,
+                    this.columnPlis.size(), file);
+            return;
+        }
+
+        this.runUncached();
+        try {
+            new PliSnapshot(this.columnPlis, this.columnIndexToDuplicatesMapping, this.columnIndexToNameMapping,
+                    this.nRows, this.rowCounts).write(file, key);
+            log.info("Wrote snapshot {}", file);
+        } catch (IOException e) {
+            log.warn("Could not write snapshot {}", file, e);
+        }
+    }
+
+    private void setSnapshot(PliSnapshot snapshot) {
+        this.columnPlis = snapshot.getColumnPlis();
+        this.columnIndexToDuplicatesMapping = snapshot.getColumnIndexToDuplicatesMapping();
+        this.columnIndexToNameMapping = snapshot.getColumnIndexToNameMapping();
+        this.nRows = snapshot.getNRows();
+        this.rowCounts = snapshot.getRowCounts();
+
+        // snapshots store compacted PLIs, their views on the mapped file already live off-heap
+        this.columnPliBytes = this.columnPlis.stream().mapToLong(ImmutableRoaringBitmap::serializedSizeInBytes).sum();
+        this.compactedColumnPliBytes = this.columnPliBytes;
+    }
+
+    private void runUncached() {
+        if ((this.configuration.isParallelIngest() || this.configuration.isFastNullScan()) &&
+                this.configuration.getRowLimit() == -1) {
+            this.readChunked();
+        } else {
+            this.readSequential();
+        }
+
+        this.transformRows();
+        this.transformColumns();
+        log.info("Deduplicated {} rows to {}, {} columns to {}", this.nRows, this.nRowsDistinct,
+                this.columnPlisMutable.size(), this.columnPlis.size());
+        this.compactColumns();
+    }
+
+    private void compactColumns() {
+        this.columnPliBytes = 0L;
+        List<ImmutableRoaringBitmap> compacted = new ArrayList<>(this.columnPlis.size());
+        for (ImmutableRoaringBitmap pli : this.columnPlis) {
+            this.columnPliBytes += pli.serializedSizeInBytes();
+            compacted.add(FrozenPlis.compact(pli));
+        }
+
+        if (this.configuration.isOffHeapPlis()) {
+            FrozenPlis frozen = FrozenPlis.freeze(compacted, true);
+            this.columnPlis = frozen.getViews();
+            this.compactedColumnPliBytes = frozen.getSizeInBytes();
+        } else {
+            this.columnPlis = ImmutableList.copyOf(compacted);
+            this.compactedColumnPliBytes = compacted.stream()
+                    .mapToLong(ImmutableRoaringBitmap::serializedSizeInBytes).sum();
+        }
+        this.columnPlisMutable = null;
+        log.info("Compacted column PLIs from {} to {} bytes {}", this.columnPliBytes, this.compactedColumnPliBytes,
+                this.configuration.isOffHeapPlis() ? "off-heap" : "on-heap");
+    }
 
-        // Initialize data structures
+    private void readSequential() {
+        // the whole file is a single chunk
+        CodyEvents.Span event = CodyEvents.beginChunkParsed();
+        CsvParser parser = new CsvParser(this.initializeParserSettings());
+        parser.beginParsing(this.initializeReader());
+
+        // Initialize data structures, an empty file has neither columns nor rows
         String[] firstLine = parser.parseNext();
-        List<MutableRoaringBitmap> dataset = new ArrayList<>(firstLine.length);
-        for (int i = 0; i < firstLine.length; i++) {
-            dataset.add(new MutableRoaringBitmap());
-            this.columnPlisMutable = ImmutableList.copyOf(dataset);
+        this.initializeColumns(firstLine != null ? firstLine.length : 0);
+        if (firstLine == null) {
+            CodyEvents.endChunkParsed(event, 0, 0, 0, 0);
+            return;
         }
 
         // Start parsing the file
@@ -89,33 +210,66 @@ public class Preprocessor {
         }
 
         String[] nextRow;
-        while ((nextRow = parser.parseNext()) != null) {
+        while ((nextRow = parser.parseNext()) != null)
             this.addRow(nextRow);
-            this.nRows++;
+        CodyEvents.endChunkParsed(event, 0, new File(this.configuration.getPath()).length(), this.nRows,
+                this.nRowsDistinct);
+    }
+
+    private void readChunked() {
+        ChunkedCsvReader reader = new ChunkedCsvReader(this.configuration, this.initializeParserSettings());
+        try {
+            reader.read(chunk -> {
+                // the first chunk is handed over first and carries the header
+                if (chunk.getFirstRecord() != null) {
+                    this.initializeColumns(chunk.getFirstRecord().length);
+                    if (!this.configuration.isNoHeader())
+                        this.columnIndexToNameMapping = chunk.getFirstRecord();
+                }
+
+                // merging in chunk order assigns row indices in order of first occurrence in the whole file
+                NullPatternDeduplicator patterns = chunk.getPatterns();
+                for (int i = 0; i < patterns.size(); i++)
+                    this.addPattern(this.rowDeduplicator.add(patterns, i), patterns.getCount(i));
+            });
+        } catch (IOException e) {
+            log.error("Fatal error reading {}. Now exiting.", this.configuration.getPath(), e);
+            System.exit(1);
         }
 
-        this.transformRows();
-        this.transformColumns();
-        log.info("Deduplicated {} rows to {}, {} columns to {}", this.nRows, this.nRowsDistinct,
-                this.columnPlisMutable.size(), this.columnPlis.size());
+        // an empty file has no chunks, like the sequential reader it then has neither columns nor rows
+        if (this.rowDeduplicator == null)
+            this.initializeColumns(0);
+    }
+
+    private void initializeColumns(int nColumns) {
+        List<MutableRoaringBitmap> dataset = new ArrayList<>(nColumns);
+        for (int i = 0; i < nColumns; i++)
+            dataset.add(new MutableRoaringBitmap());
+        this.columnPlisMutable = ImmutableList.copyOf(dataset);
+        this.rowDeduplicator = new NullPatternDeduplicator(nColumns);
+        this.nullMask = this.rowDeduplicator.createMask();
     }
 
     private void addRow(String[] row) {
-        IntList nullCols = new IntArrayList();
-        for (int i = 0; i < row.length; i++)
-            if (row[i].equals(this.configuration.getNullValue())) nullCols.add(i);
+        // the mask is reused for every row, the deduplicator only copies it for new patterns
+        Arrays.fill(this.nullMask, 0L);
+        int nColumns = Math.min(row.length, this.columnPlisMutable.size());
+        for (int i = 0; i < nColumns; i++)
+            if (row[i].equals(this.configuration.getNullValue())) this.nullMask[i >>> 6] |= 1L << i;
 
-        if (this.rowDeduplicator.containsKey(nullCols)) {
-            this.rowDeduplicator.addTo(nullCols, 1);
-        } else {
-            this.rowDeduplicator.put(nullCols, 1);
-            for (int i : nullCols)
-                this.columnPlisMutable.get(i).add(this.nRowsDistinct);
+        this.addPattern(this.rowDeduplicator.add(this.nullMask, 1), 1);
+    }
+
+    private void addPattern(int index, int count) {
+        if (index == this.nRowsDistinct) {
+            this.rowDeduplicator.forEachNullColumn(index, i -> this.columnPlisMutable.get(i).add(index));
             this.nRowsDistinct++;
         }
+        this.nRows += count;
     }
 
-    private CsvParser initializeParser() {
+    private BufferedReader initializeReader() {
         File file = new File(this.configuration.getPath());
         BufferedReader reader = null;
         try {
@@ -125,6 +279,10 @@ public class Preprocessor {
             System.exit(1);
         }
 
+        return reader;
+    }
+
+    private CsvParserSettings initializeParserSettings() {
         CsvParserSettings settings = new CsvParserSettings();
         settings.getFormat().setDelimiter(this.configuration.getDelimiter());
         settings.getFormat().setQuote(this.configuration.getQuoteChar());
@@ -135,10 +293,7 @@ public class Preprocessor {
         if (this.configuration.getColLimit() != -1)
             settings.selectIndexes(IntStream.range(0, this.configuration.getColLimit()).boxed().toArray(Integer[]::new));
 
-        CsvParser parser = new CsvParser(settings);
-        parser.beginParsing(reader);
-
-        return parser;
+        return settings;
     }
 
     private void transformColumns() {
@@ -171,11 +326,12 @@ public class Preprocessor {
     private ListMultimap<ImmutableRoaringBitmap, Integer> createDuplicateColumnMapping(double maxError) {
         ListMultimap<ImmutableRoaringBitmap, Integer> deduplicator =
                 MultimapBuilder.linkedHashKeys().arrayListValues().build();
+        SupportCalculator supportCalculator = new SupportCalculator(this.rowCounts, this.nRows);
         for (int i = 0; i < this.columnPlisMutable.size(); i++) {
             boolean alreadyHasRepresentative = false;
             ImmutableRoaringBitmap toCheck = this.columnPlisMutable.get(i).toImmutableRoaringBitmap();
             for (ImmutableRoaringBitmap representative : deduplicator.keySet()) {
-                if (this.calculateSupport(ImmutableRoaringBitmap.xor(representative, toCheck)) <= maxError) {
+                if (supportCalculator.calculate(ImmutableRoaringBitmap.xor(representative, toCheck)) <= maxError) {
                     deduplicator.put(representative, i);
                     alreadyHasRepresentative = true;
                     break;
@@ -188,18 +344,8 @@ public class Preprocessor {
         return deduplicator;
     }
 
-    private double calculateSupport(ImmutableRoaringBitmap pli) {
-        double support = 0.0;
-        if (pli.cardinalityExceeds(0)) {
-            for (int index : pli)
-                support += this.rowCounts[index];
-        }
-
-        return support / (double) this.nRows;
-    }
-
     private void transformRows() {
         // Actual deduplication happens in addRow(), setting results properly here
-        this.rowCounts = this.rowDeduplicator.values().toIntArray();
+        this.rowCounts = this.rowDeduplicator.getCounts();
     }
 }
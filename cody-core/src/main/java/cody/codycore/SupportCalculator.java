@@ -0,0 +1,110 @@
+package cody.codycore;
+
+import lombok.NonNull;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Calculates the support of a PLI, i.e. the share of all rows (also counting duplicates) whose distinct row is set
+ * Distinct rows are grouped once into weight classes (all rows with the same count) or bit-sliced count planes
+ * (all rows with bit b of the count set), whichever needs fewer bitmaps. The weighted sum then is a handful of
+ * andCardinality calls instead of a lookup per set bit.
+ */
+public class SupportCalculator {
+
+    /**
+     * Intersecting a dense 2^16 chunk costs about as much as looking up this many set bits one by one,
+     * sparser PLIs are cheaper to sum up row by row
+     */
+    private static final int ITERATION_THRESHOLD = 512;
+
+    private final int[] rowCounts;
+    private final int nRows;
+    private final ImmutableRoaringBitmap[] classes;
+    private final long[] weights;
+
+    public SupportCalculator(@NonNull int[] rowCounts, int nRows) {
+        this.rowCounts = rowCounts;
+        this.nRows = nRows;
+
+        Map<Integer, MutableRoaringBitmap> weightClasses = new TreeMap<>();
+        int maxCount = 0;
+        for (int i = 0; i < rowCounts.length; i++) {
+            weightClasses.computeIfAbsent(rowCounts[i], k -> new MutableRoaringBitmap()).add(i);
+            maxCount = Math.max(maxCount, rowCounts[i]);
+        }
+
+        List<MutableRoaringBitmap> bitmaps = new ArrayList<>();
+        List<Long> weights = new ArrayList<>();
+        int nPlanes = Integer.SIZE - Integer.numberOfLeadingZeros(maxCount);
+        if (weightClasses.size() <= nPlanes) {
+            for (Map.Entry<Integer, MutableRoaringBitmap> weightClass : weightClasses.entrySet()) {
+                bitmaps.add(weightClass.getValue());
+                weights.add((long) weightClass.getKey());
+            }
+        } else {
+            for (int plane = 0; plane < nPlanes; plane++) {
+                MutableRoaringBitmap bitmap = new MutableRoaringBitmap();
+                for (int i = 0; i < rowCounts.length; i++)
+                    if ((rowCounts[i] & (1 << plane)) != 0) bitmap.add(i);
+                bitmaps.add(bitmap);
+                weights.add(1L << plane);
+            }
+        }
+
+        this.classes = new ImmutableRoaringBitmap[bitmaps.size()];
+        this.weights = new long[bitmaps.size()];
+        for (int i = 0; i < this.classes.length; i++) {
+            MutableRoaringBitmap bitmap = bitmaps.get(i);
+            bitmap.runOptimize();
+            this.classes[i] = bitmap.toImmutableRoaringBitmap();
+            this.weights[i] = weights.get(i);
+        }
+    }
+
+    /**
+     * Calculate the support of a PLI
+     *
+     * @param pli bitmap over distinct row indices
+     * @return the weighted share of set rows in [0, 1]
+     */
+    public double calculate(@NonNull ImmutableRoaringBitmap pli) {
+        return (double) this.calculateCount(pli) / (double) this.nRows;
+    }
+
+    /**
+     * Calculate the number of rows (also counting duplicates) of the set distinct rows of a PLI
+     */
+    public long calculateCount(@NonNull ImmutableRoaringBitmap pli) {
+        long cardinality = pli.getLongCardinality();
+        if (cardinality == 0)
+            return 0;
+
+        long count = 0;
+        long nChunks = (pli.last() >>> 16) - (pli.first() >>> 16) + 1;
+        if (cardinality <= (long) ITERATION_THRESHOLD * this.classes.length * nChunks) {
+            for (int index : pli)
+                count += this.rowCounts[index];
+        } else if (this.classes.length == 1) {
+            // a single weight class spans all distinct rows
+            count = this.weights[0] * cardinality;
+        } else {
+            for (int i = 0; i < this.classes.length; i++)
+                count += this.weights[i] * ImmutableRoaringBitmap.andCardinality(pli, this.classes[i]);
+        }
+
+        return count;
+    }
+
+    /**
+     * Indicates how many bitmaps a support calculation intersects with
+     */
+    public int getNumberOfClasses() {
+        return this.classes.length;
+    }
+}
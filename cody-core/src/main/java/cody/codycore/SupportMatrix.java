@@ -0,0 +1,61 @@
+package cody.codycore;
+
+/**
+ * Symmetric matrix with the support of unary Codys between all pairs of columns
+ * Only the upper triangle (including the diagonal) is stored, row by row in a flat double[]
+ */
+public class SupportMatrix {
+
+    private final int size;
+    private final double[] values;
+
+    public SupportMatrix(int size) {
+        long length = (long) size * (size + 1) / 2;
+        if (length > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Support matrix with " + size + " columns is too large");
+
+        this.size = size;
+        this.values = new double[(int) length];
+    }
+
+    /**
+     * Indicates the number of columns, i.e. the number of vertices in the graph
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Indicates the size of the stored values in bytes
+     */
+    public long getSizeInBytes() {
+        return (long) this.values.length * Double.BYTES;
+    }
+
+    /**
+     * Get the support between two columns, the order of the columns does not matter
+     */
+    public double get(int i, int j) {
+        return this.values[this.index(i, j)];
+    }
+
+    /**
+     * Set the support between two columns, the order of the columns does not matter
+     */
+    public void set(int i, int j, double support) {
+        this.values[this.index(i, j)] = support;
+    }
+
+    private int index(int i, int j) {
+        if (i > j) {
+            int swap = i;
+            i = j;
+            j = swap;
+        }
+        if (i < 0 || j >= this.size)
+            throw new IndexOutOfBoundsException("(" + i + ", " + j + ") is outside of a matrix of size " + this.size);
+
+        // rows before i hold size + (size - 1) + ... + (size - i + 1) values
+        return (int) ((long) i * this.size - (long) i * (i - 1) / 2) + (j - i);
+    }
+}
@@ -1,65 +1,163 @@
 package cody.codycore;
 
+import ch.javasoft.bitset.IBitSet;
 import cody.codycore.candidate.CheckedColumnCombination;
 import cody.codycore.candidate.ColumnCombination;
-import com.google.common.collect.ImmutableList;
+import cody.codycore.ingest.FrozenPlis;
+import cody.codycore.jfr.CodyEvents;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 import org.roaringbitmap.buffer.BufferFastAggregation;
 import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
 
 @Slf4j
 public class Validator {
 
     private final Configuration configuration;
-    private final int nRows;
-    private final int[] rowCounts;
-    private final List<List<ImmutableRoaringBitmap>> plis;
-    private final List<List<Double>> supports;
+    private final SupportCalculator supportCalculator;
+    private final List<ImmutableRoaringBitmap> dataset;
+    private final SupportMatrix supports;
+
+    /**
+     * With --off-heap-plis, views on all compacted pairwise XOR PLIs frozen into one direct buffer, ordered like the
+     * upper triangle of the support matrix without its diagonal. Otherwise, or if they exceed the share of pair PLIs
+     * in the cache size, null and pair PLIs are computed on demand and cached in plis.
+     */
+    private final ImmutableRoaringBitmap[] pairPlis;
+
+    /**
+     * Pairwise XOR PLIs, keyed by left * nColumns + right with left < right
+     * Only supports are kept for all pairs, PLIs are recomputed when they have been evicted
+     */
+    private final LoadingCache<Long, ImmutableRoaringBitmap> plis;
+
+    /**
+     * Serialized sizes in bytes of the pairwise PLIs computed so far, before and after compaction
+     */
+    private final LongAdder pairPliBytes;
+    private final LongAdder compactedPairPliBytes;
+
+    /**
+     * Partial intersections of checked parents, children missing one column are derived from them
+     */
+    private final LoadingCache<ColumnCombination, PartialIntersections> partialIntersections;
 
     public Validator(@NonNull Configuration configuration, @NonNull List<ImmutableRoaringBitmap> dataset, int nRows,
                      int[] rowCounts) {
         this.configuration = configuration;
-        this.nRows = nRows;
-        this.rowCounts = rowCounts;
-
-        ArrayList<List<ImmutableRoaringBitmap>> plis = new ArrayList<>(dataset.size());
-        ArrayList<List<Double>> supports = new ArrayList<>(dataset.size());
-
-        for (int left = 0; left < dataset.size(); left++) {
-            ArrayList<ImmutableRoaringBitmap> currentLevelPlis = new ArrayList<>(dataset.size());
-            ArrayList<Double> currentLevelSupports = new ArrayList<>(dataset.size());
-
-            for (int right = 0; right < dataset.size(); right++) {
-                if (left > right) {
-                    currentLevelPlis.add(plis.get(right).get(left));
-                    currentLevelSupports.add(supports.get(right).get(left));
-                } else {
-                    ImmutableRoaringBitmap pli = ImmutableRoaringBitmap.xor(dataset.get(left), dataset.get(right));
-                    currentLevelPlis.add(pli);
-                    currentLevelSupports.add(this.calculateSupport(pli));
+        this.supportCalculator = new SupportCalculator(rowCounts, nRows);
+        this.dataset = dataset;
+
+        // both caches share one budget, split evenly between them
+        long maxWeight = configuration.getPliCacheSize() == -1
+                ? Runtime.getRuntime().maxMemory() / 4
+                : configuration.getPliCacheSize() * 1024L * 1024L;
+        long maxPliWeight = maxWeight / 2;
+        long maxPartialIntersectionWeight = maxWeight - maxPliWeight;
+        this.plis = CacheBuilder.newBuilder()
+                .maximumWeight(maxPliWeight)
+                .weigher((Long key, ImmutableRoaringBitmap pli) -> pli.serializedSizeInBytes())
+                .recordStats()
+                .build(CacheLoader.from(this::computePli));
+        this.partialIntersections = CacheBuilder.newBuilder()
+                .maximumWeight(maxPartialIntersectionWeight)
+                .weigher((ColumnCombination key, PartialIntersections partials) -> partials.getWeight())
+                .recordStats()
+                .build(CacheLoader.from(this::computePartialIntersections));
+
+        int nColumns = dataset.size();
+        CodyEvents.Span event = CodyEvents.beginSupportMatrix();
+        SupportMatrix supports = new SupportMatrix(nColumns);
+
+        // with off-heap PLIs, the matrix build sizes up all compacted pair PLIs, which are then computed again and
+        // serialized right into their place in the buffer, so they never pile up on the heap
+        // an empty bitmap is serialized to 8 bytes, so with too many pairs they cannot fit whatever they contain
+        long maxPairBytes = Math.min(maxPliWeight, Integer.MAX_VALUE);
+        long nPairs = (long) nColumns * (nColumns - 1) / 2;
+        int[] pairSizes = configuration.isOffHeapPlis() && nPairs * 8 <= maxPairBytes ? new int[(int) nPairs] : null;
+        this.pairPliBytes = new LongAdder();
+        this.compactedPairPliBytes = new LongAdder();
+
+        // every row of the upper triangle is computed independently, so results do not depend on the scheduling
+        ForkJoinPool pool = new ForkJoinPool(configuration.getParallelism());
+        try {
+            pool.submit(() -> IntStream.range(0, nColumns).parallel().forEach(left -> {
+                for (int right = left; right < nColumns; right++) {
+                    MutableRoaringBitmap pli = ImmutableRoaringBitmap.xor(dataset.get(left), dataset.get(right));
+                    supports.set(left, right, this.supportCalculator.calculate(pli));
+                    if (pairSizes != null && right > left)
+                        pairSizes[pairIndex(nColumns, left, right)] = this.compact(pli).serializedSizeInBytes();
                 }
-            }
+            })).get();
 
-            plis.add(ImmutableList.copyOf(currentLevelPlis));
-            supports.add(ImmutableList.copyOf(currentLevelSupports));
+            if (pairSizes != null && this.compactedPairPliBytes.sum() <= maxPairBytes) {
+                FrozenPlis frozen = new FrozenPlis(pairSizes, true);
+                pool.submit(() -> IntStream.range(0, nColumns).parallel().forEach(left -> {
+                    for (int right = left + 1; right < nColumns; right++)
+                        frozen.set(pairIndex(nColumns, left, right), FrozenPlis.compact(
+                                ImmutableRoaringBitmap.xor(dataset.get(left), dataset.get(right))));
+                })).get();
+                this.pairPlis = frozen.getViews().toArray(new ImmutableRoaringBitmap[0]);
+                log.info("Froze {} pairwise PLIs into {} bytes off-heap", frozen.size(), frozen.getSizeInBytes());
+            } else {
+                this.pairPlis = null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building the support matrix", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to build the support matrix", e.getCause());
+        } finally {
+            pool.shutdown();
         }
 
-        this.plis = ImmutableList.copyOf(plis);
-        this.supports = ImmutableList.copyOf(supports);
+        this.supports = supports;
+        CodyEvents.endSupportMatrix(event, nColumns, supports.getSizeInBytes());
+    }
+
+    /**
+     * Position of a pair in the upper triangle without the diagonal, rows before left hold
+     * (nColumns - 1) + (nColumns - 2) + ... + (nColumns - left) pairs
+     */
+    private static int pairIndex(int nColumns, int left, int right) {
+        return (int) ((long) left * nColumns - (long) left * (left + 1) / 2) + (right - left - 1);
+    }
+
+    private ImmutableRoaringBitmap computePli(long key) {
+        int nColumns = this.dataset.size();
+        return this.compact(ImmutableRoaringBitmap.xor(this.dataset.get((int) (key / nColumns)),
+                this.dataset.get((int) (key % nColumns))));
+    }
+
+    private MutableRoaringBitmap compact(MutableRoaringBitmap pli) {
+        this.pairPliBytes.add(pli.serializedSizeInBytes());
+        FrozenPlis.compact(pli);
+        this.compactedPairPliBytes.add(pli.serializedSizeInBytes());
+        return pli;
     }
 
-    private double calculateSupport(ImmutableRoaringBitmap pli) {
-        double support = 0.0;
-        if (pli.cardinalityExceeds(0)) {
-            for (int index : pli)
-                support += this.rowCounts[index];
+    private ImmutableRoaringBitmap getPli(int left, int right) {
+        if (left > right) {
+            int swap = left;
+            left = right;
+            right = swap;
         }
+        if (this.pairPlis != null)
+            return this.pairPlis[pairIndex(this.dataset.size(), left, right)];
 
-        return support / (double) this.nRows;
+        return this.plis.getUnchecked((long) left * this.dataset.size() + right);
     }
 
     /**
@@ -69,27 +167,282 @@ public class Validator {
      * @return CheckedColumnCombination wit support set to respective value
      */
     public CheckedColumnCombination checkColumnCombination(ColumnCombination c) {
+        CodyEvents.Span event = CodyEvents.beginCandidateCheck();
         ImmutableRoaringBitmap[] pliList =
                 new ImmutableRoaringBitmap[c.getLeft().cardinality() * c.getRight().cardinality()];
 
         int index = 0;
         for (int left = c.getLeft().nextSetBit(0); left != -1; left = c.getLeft().nextSetBit(left + 1)) {
             for (int right = c.getRight().nextSetBit(0); right != -1; right = c.getRight().nextSetBit(right + 1)) {
-                pliList[index] = this.plis.get(left).get(right);
+                pliList[index] = this.getPli(left, right);
                 index++;
             }
         }
 
-        return new CheckedColumnCombination(c,
-                this.calculateSupport(BufferFastAggregation.and(pliList)));
+        CheckedColumnCombination checked = new CheckedColumnCombination(c,
+                this.supportCalculator.calculate(BufferFastAggregation.and(pliList)));
+        CodyEvents.endCandidateCheck(event, checked, false);
+        return checked;
+    }
+
+    /**
+     * Check if a given ColumnCombination reaches the minimum support
+     * Pair PLIs are intersected in ascending order of their support, the support of each intermediate intersection
+     * is an upper bound for the final support. The check stops as soon as that bound falls below minSupport.
+     *
+     * @param c          ColumnCombination to check
+     * @param minSupport threshold the support has to reach
+     * @return CheckedColumnCombination with the exact support if it reaches minSupport,
+     * otherwise possibly flagged with an upper bound below minSupport
+     */
+    public CheckedColumnCombination checkColumnCombination(ColumnCombination c, double minSupport) {
+        CodyEvents.Span event = CodyEvents.beginCandidateCheck();
+        CheckedColumnCombination checked = this.checkPairwise(c, minSupport);
+        CodyEvents.endCandidateCheck(event, checked, false);
+        return checked;
+    }
+
+    private CheckedColumnCombination checkPairwise(ColumnCombination c, double minSupport) {
+        int nPairs = c.getLeft().cardinality() * c.getRight().cardinality();
+        long[] pairs = new long[nPairs];
+        double[] pairSupports = new double[nPairs];
+
+        int index = 0;
+        for (int left = c.getLeft().nextSetBit(0); left != -1; left = c.getLeft().nextSetBit(left + 1)) {
+            for (int right = c.getRight().nextSetBit(0); right != -1; right = c.getRight().nextSetBit(right + 1)) {
+                pairs[index] = ((long) left << 32) | right;
+                pairSupports[index] = this.supports.get(left, right);
+                index++;
+            }
+        }
+
+        // candidates have few pairs, an insertion sort avoids boxing
+        for (int i = 1; i < nPairs; i++) {
+            double pairSupport = pairSupports[i];
+            long pair = pairs[i];
+            int j = i - 1;
+            for (; j >= 0 && pairSupports[j] > pairSupport; j--) {
+                pairSupports[j + 1] = pairSupports[j];
+                pairs[j + 1] = pairs[j];
+            }
+            pairSupports[j + 1] = pairSupport;
+            pairs[j + 1] = pair;
+        }
+
+        // the intersection is a subset of every pair PLI, so the smallest pair support already bounds the result
+        double support = pairSupports[0];
+        if (support < minSupport || nPairs == 1)
+            return new CheckedColumnCombination(c, support, nPairs > 1);
+
+        // bounds are checked after 2, 4, 8, ... pairs, which keeps the overhead within the cost of the last check
+        ImmutableRoaringBitmap intersection = this.getPli((int) (pairs[0] >>> 32), (int) pairs[0]);
+        for (int i = 1; i < nPairs; i++) {
+            intersection = ImmutableRoaringBitmap.and(intersection,
+                    this.getPli((int) (pairs[i] >>> 32), (int) pairs[i]));
+
+            boolean last = i == nPairs - 1;
+            if (last || ((i + 1) & i) == 0) {
+                support = this.supportCalculator.calculate(intersection);
+                if (support < minSupport)
+                    return new CheckedColumnCombination(c, support, !last);
+            }
+        }
+
+        return new CheckedColumnCombination(c, support);
+    }
+
+    /**
+     * Check a ColumnCombination which misses exactly one column of an already checked parent
+     * The intersection is derived from the parent's partial intersections with a single AND, the partial
+     * intersections are computed once per parent and shared by all its children.
+     *
+     * @param c          ColumnCombination to check
+     * @param parent     ColumnCombination with one more column than c
+     * @param minSupport threshold the support has to reach
+     * @return CheckedColumnCombination with the exact support, or flagged with an upper bound if a pair of columns
+     * already misses minSupport
+     */
+    public CheckedColumnCombination checkColumnCombination(ColumnCombination c, ColumnCombination parent,
+                                                           double minSupport) {
+        CodyEvents.Span event = CodyEvents.beginCandidateCheck();
+        CheckedColumnCombination checked = this.checkFromParent(c, parent, minSupport);
+        CodyEvents.endCandidateCheck(event, checked, true);
+        return checked;
+    }
+
+    private CheckedColumnCombination checkFromParent(ColumnCombination c, ColumnCombination parent,
+                                                     double minSupport) {
+        double bound = Double.MAX_VALUE;
+        for (int left = c.getLeft().nextSetBit(0); left != -1; left = c.getLeft().nextSetBit(left + 1))
+            for (int right = c.getRight().nextSetBit(0); right != -1; right = c.getRight().nextSetBit(right + 1))
+                bound = Math.min(bound, this.supports.get(left, right));
+
+        if (bound < minSupport)
+            return new CheckedColumnCombination(c, bound, c.getColumns().cardinality() > 2);
+
+        IBitSet removed = parent.getColumns().clone();
+        removed.andNot(c.getColumns());
+        int column = removed.nextSetBit(0);
+        ImmutableRoaringBitmap intersection = this.partialIntersections.getUnchecked(parent).without(column);
+        return new CheckedColumnCombination(c, this.supportCalculator.calculate(intersection));
+    }
+
+    /**
+     * Drop all partial intersections, e.g. once all children of the cached parents have been checked
+     */
+    public void invalidatePartialIntersections() {
+        this.partialIntersections.invalidateAll();
+    }
+
+    private PartialIntersections computePartialIntersections(ColumnCombination parent) {
+        int[] lefts = toArray(parent.getLeft());
+        int[] rights = toArray(parent.getRight());
+
+        // the intersection over all pairs of one left column, respectively one right column
+        // a single column of a side is never removed from a parent, so its products are not needed
+        ImmutableRoaringBitmap[] leftProducts = null;
+        if (lefts.length > 1) {
+            leftProducts = new ImmutableRoaringBitmap[lefts.length];
+            for (int i = 0; i < lefts.length; i++) {
+                leftProducts[i] = this.getPli(lefts[i], rights[0]);
+                for (int j = 1; j < rights.length; j++)
+                    leftProducts[i] = ImmutableRoaringBitmap.and(leftProducts[i], this.getPli(lefts[i], rights[j]));
+            }
+        }
+
+        ImmutableRoaringBitmap[] rightProducts = null;
+        if (rights.length > 1) {
+            rightProducts = new ImmutableRoaringBitmap[rights.length];
+            for (int j = 0; j < rights.length; j++) {
+                rightProducts[j] = this.getPli(lefts[0], rights[j]);
+                for (int i = 1; i < lefts.length; i++)
+                    rightProducts[j] = ImmutableRoaringBitmap.and(rightProducts[j], this.getPli(lefts[i], rights[j]));
+            }
+        }
+
+        return new PartialIntersections(lefts, leftProducts, rights, rightProducts);
+    }
+
+    private static int[] toArray(IBitSet columns) {
+        int[] result = new int[columns.cardinality()];
+        int index = 0;
+        for (int i = columns.nextSetBit(0); i != -1; i = columns.nextSetBit(i + 1))
+            result[index++] = i;
+
+        return result;
+    }
+
+    /**
+     * Get hit, miss and eviction counts of the partial intersection cache
+     */
+    public CacheStats getPartialIntersectionCacheStats() {
+        return this.partialIntersections.stats();
     }
 
     /**
-     * Get a 2D adjacency matrix with the support for unary Codys between all columns
+     * Get a symmetric adjacency matrix with the support for unary Codys between all columns
      *
-     * @return a list of lists (all same length) with the support as a double
+     * @return the support matrix, indexed by column
      */
-    public List<List<Double>> getGraphView() {
+    public SupportMatrix getGraphView() {
         return this.supports;
     }
+
+    /**
+     * Serialized size in bytes of the pairwise PLIs computed so far, before they have been compacted
+     * Pair PLIs are counted each time they are computed, i.e. again after they have been evicted.
+     */
+    public long getPairPliBytes() {
+        return this.pairPliBytes.sum();
+    }
+
+    /**
+     * Serialized size in bytes of the pairwise PLIs computed so far, after they have been compacted
+     */
+    public long getCompactedPairPliBytes() {
+        return this.compactedPairPliBytes.sum();
+    }
+
+    /**
+     * Get hit, miss and eviction counts of the pairwise PLI cache
+     */
+    public CacheStats getPliCacheStats() {
+        return this.plis.stats();
+    }
+
+    /**
+     * Prefix and suffix intersections over the per-column products of one side of a parent
+     * The intersection of the parent without column i of a side is prefix[i - 1] AND suffix[i + 1]
+     */
+    private static class PartialIntersections {
+
+        private final int[] lefts;
+        private final ImmutableRoaringBitmap[] leftPrefixes;
+        private final ImmutableRoaringBitmap[] leftSuffixes;
+        private final int[] rights;
+        private final ImmutableRoaringBitmap[] rightPrefixes;
+        private final ImmutableRoaringBitmap[] rightSuffixes;
+
+        PartialIntersections(int[] lefts, ImmutableRoaringBitmap[] leftProducts, int[] rights,
+                             ImmutableRoaringBitmap[] rightProducts) {
+            this.lefts = lefts;
+            this.leftPrefixes = leftProducts == null ? new ImmutableRoaringBitmap[0] : prefixes(leftProducts);
+            this.leftSuffixes = leftProducts == null ? new ImmutableRoaringBitmap[0] : suffixes(leftProducts);
+            this.rights = rights;
+            this.rightPrefixes = rightProducts == null ? new ImmutableRoaringBitmap[0] : prefixes(rightProducts);
+            this.rightSuffixes = rightProducts == null ? new ImmutableRoaringBitmap[0] : suffixes(rightProducts);
+        }
+
+        ImmutableRoaringBitmap without(int column) {
+            int index = Arrays.binarySearch(this.lefts, column);
+            if (index >= 0)
+                return without(this.leftPrefixes, this.leftSuffixes, index);
+
+            index = Arrays.binarySearch(this.rights, column);
+            if (index >= 0)
+                return without(this.rightPrefixes, this.rightSuffixes, index);
+
+            throw new IllegalArgumentException("Column " + column + " is not part of the parent");
+        }
+
+        int getWeight() {
+            int weight = 0;
+            for (ImmutableRoaringBitmap[] bitmaps : new ImmutableRoaringBitmap[][]{
+                    this.leftPrefixes, this.leftSuffixes, this.rightPrefixes, this.rightSuffixes})
+                for (ImmutableRoaringBitmap bitmap : bitmaps)
+                    weight += bitmap.serializedSizeInBytes();
+
+            return weight;
+        }
+
+        private static ImmutableRoaringBitmap without(ImmutableRoaringBitmap[] prefixes,
+                                                      ImmutableRoaringBitmap[] suffixes, int index) {
+            if (prefixes.length == 0)
+                throw new IllegalArgumentException("Cannot remove the only column of a side");
+            if (index == 0)
+                return suffixes[1];
+            if (index == prefixes.length - 1)
+                return prefixes[index - 1];
+
+            return ImmutableRoaringBitmap.and(prefixes[index - 1], suffixes[index + 1]);
+        }
+
+        private static ImmutableRoaringBitmap[] prefixes(ImmutableRoaringBitmap[] products) {
+            ImmutableRoaringBitmap[] prefixes = new ImmutableRoaringBitmap[products.length];
+            prefixes[0] = products[0];
+            for (int i = 1; i < products.length; i++)
+                prefixes[i] = ImmutableRoaringBitmap.and(prefixes[i - 1], products[i]);
+
+            return prefixes;
+        }
+
+        private static ImmutableRoaringBitmap[] suffixes(ImmutableRoaringBitmap[] products) {
+            ImmutableRoaringBitmap[] suffixes = new ImmutableRoaringBitmap[products.length];
+            suffixes[products.length - 1] = products[products.length - 1];
+            for (int i = products.length - 2; i >= 0; i--)
+                suffixes[i] = ImmutableRoaringBitmap.and(products[i], suffixes[i + 1]);
+
+            return suffixes;
+        }
+    }
 }
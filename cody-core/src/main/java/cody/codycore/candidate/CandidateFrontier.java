@@ -0,0 +1,633 @@
+package cody.codycore.candidate;
+
+import ch.javasoft.bitset.BitSetFactory;
+import ch.javasoft.bitset.IBitSet;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Set of ColumnCombinations of a lattice level, stored as packed words instead of objects
+ * Each candidate occupies one slot of an open-addressing hash table: the words of its left and right columns and the
+ * column it lacks compared to the parent it has been derived from. Candidates are added concurrently and deduplicated
+ * on the way, the first added parent of a candidate is kept. The words are held on the heap or, for very large
+ * levels, in direct memory. ColumnCombination objects are only created while iterating.
+ * With a spill threshold, the table is sorted and written to a temporary run file whenever it holds more candidates
+ * than the threshold. Iterating merges the runs in a streaming pass and drops duplicates across runs, so a level of
+ * any size is processed in bounded memory.
+ */
+public class CandidateFrontier {
+
+    /**
+     * Number of candidates handed to the consumer at once while iterating
+     */
+    public static final int BATCH_SIZE = 1 << 14;
+
+    private static final long NO_PARENT = -1;
+
+    private static final int EMPTY = 0;
+    private static final int WRITING = 1;
+    private static final int FULL = 2;
+
+    private static final int INSERTED = 0;
+    private static final int DUPLICATE = 1;
+    private static final int TABLE_FULL = 2;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MAXIMUM_CAPACITY = 1 << 30;
+    private static final int RUN_BUFFER_SIZE = 1 << 16;
+    private static final int MERGE_FAN_IN = 64;
+
+    private final int nColumns;
+    private final int nWords;
+    private final int stride;
+    private final BitSetFactory bitSetFactory;
+    private final boolean offHeap;
+    private final long spillThreshold;
+    private final Path spillDirectory;
+
+    /**
+     * Adding candidates holds the read lock, growing and spilling the table the write lock
+     */
+    private final ReentrantReadWriteLock lock;
+    private final AtomicLong size;
+    private final List<Path> runs;
+    private long nSpilled;
+    private volatile Table table;
+
+    /**
+     * @param nColumns      number of columns of the candidates' sets, i.e. the number of deduplicated columns
+     * @param bitSetFactory creates the column sets of iterated candidates
+     * @param offHeap       store the words in direct memory instead of the heap
+     */
+    public CandidateFrontier(int nColumns, @NonNull BitSetFactory bitSetFactory, boolean offHeap) {
+        this(nColumns, bitSetFactory, offHeap, -1, null);
+    }
+
+    /**
+     * @param spillThreshold number of candidates held in memory before they are spilled to a run file, -1 to keep
+     *                       all candidates in memory
+     * @param spillDirectory directory of the run files, null for the default temporary directory
+     */
+    public CandidateFrontier(int nColumns, @NonNull BitSetFactory bitSetFactory, boolean offHeap,
+                             long spillThreshold, Path spillDirectory) {
+        this.nColumns = nColumns;
+        this.nWords = Math.max(1, (nColumns + Long.SIZE - 1) / Long.SIZE);
+        this.stride = 2 * this.nWords + 1;
+        this.bitSetFactory = bitSetFactory;
+        this.offHeap = offHeap;
+        this.spillThreshold = spillThreshold;
+        this.spillDirectory = spillDirectory != null ? spillDirectory
+                : Paths.get(System.getProperty("java.io.tmpdir"));
+        this.lock = new ReentrantReadWriteLock();
+        this.size = new AtomicLong();
+        this.runs = new ArrayList<>();
+        this.table = new Table(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Add a candidate without parent
+     *
+     * @return true if the candidate has not been added before, candidates spilled before are not detected
+     */
+    public boolean add(ColumnCombination c) {
+        return this.add(c, null);
+    }
+
+    /**
+     * Add a candidate, if it has been added before the parent of the first addition is kept
+     *
+     * @param parent immediate superset of the candidate that has been checked exactly, or null
+     * @return true if the candidate has not been added before, candidates spilled before are not detected
+     */
+    public boolean add(@NonNull ColumnCombination c, ColumnCombination parent) {
+        long[] key = new long[2 * this.nWords];
+        this.encode(c.getLeft(), key, 0);
+        this.encode(c.getRight(), key, this.nWords);
+        long hash = hash(key);
+        long removed = parent == null ? NO_PARENT : encodeParent(c, parent);
+
+        // count under the lock, so growing and spilling see the exact number of candidates in the table
+        while (true) {
+            Table table;
+            int result;
+            long size = 0;
+            this.lock.readLock().lock();
+            try {
+                table = this.table;
+                result = table.insert(key, hash, removed);
+                if (result == INSERTED)
+                    size = this.size.incrementAndGet();
+            } finally {
+                this.lock.readLock().unlock();
+            }
+
+            if (result == DUPLICATE)
+                return false;
+            if (result == TABLE_FULL) {
+                // concurrent insertions filled the table before any of them could grow it
+                this.grow(table);
+                continue;
+            }
+
+            if (this.spillThreshold >= 0 && size > this.spillThreshold)
+                this.spill(this.spillThreshold);
+            else if (size > table.threshold)
+                this.grow(table);
+            return true;
+        }
+    }
+
+    /**
+     * Indicates the number of candidates added so far, spilled candidates are counted once per run they occur in
+     */
+    public long size() {
+        return this.nSpilled + this.size.get();
+    }
+
+    /**
+     * Indicates the number of run files written so far
+     */
+    public int getNumberOfRuns() {
+        return this.runs.size();
+    }
+
+    /**
+     * Pass all candidates in batches of at most BATCH_SIZE to the consumer, no candidates must be added meanwhile
+     * If candidates have been spilled, the runs are merged in order of their columns and deleted afterwards, so the
+     * frontier can only be iterated once.
+     */
+    public void forEachBatch(@NonNull Consumer<List<Candidate>> consumer) {
+        if (this.runs.isEmpty()) {
+            Table table = this.table;
+            List<Candidate> batch = new ArrayList<>(BATCH_SIZE);
+            for (int slot = 0; slot < table.capacity; slot++) {
+                if (table.states.get(slot) != FULL) continue;
+
+                batch.add(this.decode(table.words, (long) slot * this.stride));
+                if (batch.size() == BATCH_SIZE) {
+                    consumer.accept(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty())
+                consumer.accept(batch);
+        } else {
+            this.spill(0);
+            try {
+                this.mergeRuns(consumer);
+            } finally {
+                this.deleteRuns();
+            }
+        }
+    }
+
+    /**
+     * Delete all run files, e.g. if the frontier is dropped without iterating it
+     */
+    public void deleteRuns() {
+        for (Path run : this.runs) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        this.runs.clear();
+    }
+
+    /**
+     * @param old table that has been found too full, another thread may have grown or spilled it meanwhile
+     */
+    private void grow(Table old) {
+        this.lock.writeLock().lock();
+        try {
+            if (this.table != old || this.size.get() <= old.threshold)
+                return;
+            if (old.capacity >= MAXIMUM_CAPACITY)
+                throw new IllegalStateException("Candidate frontier exceeds " + MAXIMUM_CAPACITY + " slots");
+
+            Table grown = new Table(old.capacity * 2);
+            long[] key = new long[2 * this.nWords];
+            for (int slot = 0; slot < old.capacity; slot++) {
+                if (old.states.get(slot) != FULL) continue;
+
+                long offset = (long) slot * this.stride;
+                for (int i = 0; i < key.length; i++)
+                    key[i] = old.words.get(offset + i);
+                grown.insert(key, hash(key), old.words.get(offset + key.length));
+            }
+            this.table = grown;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Write the candidates of the table sorted by their columns to a new run file and start over with an empty table
+     *
+     * @param above only spill if the table holds more candidates, another thread may have spilled it meanwhile
+     */
+    private void spill(long above) {
+        this.lock.writeLock().lock();
+        try {
+            if (this.size.get() <= above)
+                return;
+
+            Table old = this.table;
+            long[][] entries = new long[(int) this.size.get()][];
+            int n = 0;
+            for (int slot = 0; slot < old.capacity; slot++) {
+                if (old.states.get(slot) != FULL) continue;
+
+                long offset = (long) slot * this.stride;
+                long[] entry = new long[this.stride];
+                for (int i = 0; i < this.stride; i++)
+                    entry[i] = old.words.get(offset + i);
+                entries[n++] = entry;
+            }
+            Arrays.sort(entries, 0, n, this::compareKeys);
+
+            Path run = Files.createTempFile(this.spillDirectory, "cody-frontier-", ".run");
+            this.runs.add(run);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run),
+                    RUN_BUFFER_SIZE))) {
+                for (int i = 0; i < n; i++)
+                    for (long word : entries[i])
+                        out.writeLong(word);
+            }
+
+            this.nSpilled += n;
+            this.size.set(0);
+            this.table = new Table(old.capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spill candidates to " + this.spillDirectory, e);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Merge the sorted runs, of equal candidates only the one of the earliest run is passed on
+     * If there are more than MERGE_FAN_IN runs, groups of consecutive runs are merged into longer runs first, so the
+     * number of open files and read buffers stays bounded.
+     */
+    private void mergeRuns(Consumer<List<Candidate>> consumer) {
+        try {
+            while (this.runs.size() > MERGE_FAN_IN) {
+                List<Path> merged = new ArrayList<>();
+                for (int i = 0; i < this.runs.size(); i += MERGE_FAN_IN) {
+                    List<Path> group = this.runs.subList(i, Math.min(i + MERGE_FAN_IN, this.runs.size()));
+                    Path run = Files.createTempFile(this.spillDirectory, "cody-frontier-", ".run");
+                    merged.add(run);
+                    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                            Files.newOutputStream(run), RUN_BUFFER_SIZE))) {
+                        this.merge(group, entry -> {
+                            for (long word : entry)
+                                out.writeLong(word);
+                        });
+                    }
+                    for (Path groupRun : group)
+                        Files.delete(groupRun);
+                }
+                this.runs.clear();
+                this.runs.addAll(merged);
+            }
+
+            List<Candidate> batch = new ArrayList<>(BATCH_SIZE);
+            this.merge(this.runs, entry -> {
+                batch.add(this.decode(entry));
+                if (batch.size() == BATCH_SIZE) {
+                    consumer.accept(new ArrayList<>(batch));
+                    batch.clear();
+                }
+            });
+            if (!batch.isEmpty())
+                consumer.accept(batch);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not merge spilled candidates", e);
+        }
+    }
+
+    private void merge(List<Path> runs, EntryConsumer consumer) throws IOException {
+        List<RunReader> readers = new ArrayList<>(runs.size());
+        try {
+            Comparator<RunReader> order = Comparator.comparing((RunReader reader) -> reader.entry, this::compareKeys)
+                    .thenComparingInt(reader -> reader.index);
+            PriorityQueue<RunReader> heads = new PriorityQueue<>(Math.max(1, runs.size()), order);
+            for (Path run : runs) {
+                RunReader reader = new RunReader(run, readers.size());
+                readers.add(reader);
+                if (reader.next())
+                    heads.add(reader);
+            }
+
+            long[] previous = null;
+            while (!heads.isEmpty()) {
+                RunReader reader = heads.poll();
+                if (previous == null || this.compareKeys(previous, reader.entry) != 0) {
+                    previous = reader.entry.clone();
+                    consumer.accept(previous);
+                }
+                if (reader.next())
+                    heads.add(reader);
+            }
+        } finally {
+            for (RunReader reader : readers)
+                reader.close();
+        }
+    }
+
+    private int compareKeys(long[] a, long[] b) {
+        for (int i = 0; i < 2 * this.nWords; i++) {
+            int comparison = Long.compareUnsigned(a[i], b[i]);
+            if (comparison != 0)
+                return comparison;
+        }
+        return 0;
+    }
+
+    private void encode(IBitSet columns, long[] key, int from) {
+        for (int i = columns.nextSetBit(0); i != -1; i = columns.nextSetBit(i + 1)) {
+            if (i >= this.nColumns)
+                throw new IndexOutOfBoundsException("Column " + i + " exceeds " + this.nColumns + " columns");
+            key[from + (i >>> 6)] |= 1L << i;
+        }
+    }
+
+    /**
+     * Encode the parent as the column it has in addition to c, shifted left by one with the lowest bit set for a
+     * right-hand side column
+     */
+    private static long encodeParent(ColumnCombination c, ColumnCombination parent) {
+        for (int i = parent.getLeft().nextSetBit(0); i != -1; i = parent.getLeft().nextSetBit(i + 1))
+            if (!c.getLeft().get(i)) return (long) i << 1;
+        for (int i = parent.getRight().nextSetBit(0); i != -1; i = parent.getRight().nextSetBit(i + 1))
+            if (!c.getRight().get(i)) return ((long) i << 1) | 1;
+        throw new IllegalArgumentException(parent + " is no superset of " + c);
+    }
+
+    private Candidate decode(Words words, long offset) {
+        long[] entry = new long[this.stride];
+        for (int i = 0; i < this.stride; i++)
+            entry[i] = words.get(offset + i);
+        return this.decode(entry);
+    }
+
+    private Candidate decode(long[] entry) {
+        IBitSet left = this.decode(entry, 0);
+        IBitSet right = this.decode(entry, this.nWords);
+        ColumnCombination c = new ColumnCombination(left, right);
+
+        long removed = entry[2 * this.nWords];
+        if (removed == NO_PARENT)
+            return new Candidate(c, null);
+
+        IBitSet parentLeft = left.clone();
+        IBitSet parentRight = right.clone();
+        ((removed & 1) == 0 ? parentLeft : parentRight).set((int) (removed >>> 1));
+        return new Candidate(c, new ColumnCombination(parentLeft, parentRight));
+    }
+
+    private IBitSet decode(long[] entry, int from) {
+        IBitSet columns = this.bitSetFactory.create(this.nColumns);
+        for (int i = 0; i < this.nWords; i++) {
+            for (long word = entry[from + i]; word != 0; word &= word - 1)
+                columns.set(i * Long.SIZE + Long.numberOfTrailingZeros(word));
+        }
+        return columns;
+    }
+
+    private static long hash(long[] key) {
+        long hash = 0;
+        for (long word : key) {
+            hash = (hash ^ word) * 0x9E3779B97F4A7C15L;
+            hash ^= hash >>> 32;
+        }
+        return hash;
+    }
+
+    /**
+     * A candidate of the frontier with the parent it has been derived from
+     */
+    @Value
+    public static class Candidate {
+
+        ColumnCombination columnCombination;
+
+        /**
+         * Immediate superset whose partial intersections can be reused, null if there is none
+         */
+        ColumnCombination parent;
+    }
+
+    private class Table {
+
+        private final int capacity;
+        private final int mask;
+        private final long threshold;
+        private final AtomicIntegerArray states;
+        private final Words words;
+
+        /**
+         * Number of claimed slots, at most capacity - 1, so probing always ends at an empty slot
+         */
+        private final AtomicInteger occupied;
+
+        Table(int capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.threshold = capacity / 2;
+            this.states = new AtomicIntegerArray(capacity);
+            this.occupied = new AtomicInteger();
+            long length = (long) capacity * CandidateFrontier.this.stride;
+            this.words = CandidateFrontier.this.offHeap ? new DirectWords(length) : new HeapWords(length);
+        }
+
+        /**
+         * Claim an empty slot by linear probing, a slot is only compared once its writer has published it
+         *
+         * @return INSERTED, DUPLICATE or TABLE_FULL if all but one slot are claimed and the table has to grow first
+         */
+        int insert(long[] key, long hash, long parent) {
+            int slot = (int) (hash & this.mask);
+            while (true) {
+                int state = this.states.get(slot);
+                if (state == EMPTY) {
+                    if (!this.reserve())
+                        return TABLE_FULL;
+                    if (!this.states.compareAndSet(slot, EMPTY, WRITING)) {
+                        this.occupied.decrementAndGet();
+                        continue;
+                    }
+
+                    long offset = (long) slot * CandidateFrontier.this.stride;
+                    for (int i = 0; i < key.length; i++)
+                        this.words.set(offset + i, key[i]);
+                    this.words.set(offset + key.length, parent);
+                    this.states.set(slot, FULL);
+                    return INSERTED;
+                }
+                if (state == WRITING) {
+                    Thread.yield();
+                    continue;
+                }
+                if (this.matches(slot, key))
+                    return DUPLICATE;
+                slot = (slot + 1) & this.mask;
+            }
+        }
+
+        private boolean reserve() {
+            while (true) {
+                int occupied = this.occupied.get();
+                if (occupied >= this.capacity - 1)
+                    return false;
+                if (this.occupied.compareAndSet(occupied, occupied + 1))
+                    return true;
+            }
+        }
+
+        private boolean matches(int slot, long[] key) {
+            long offset = (long) slot * CandidateFrontier.this.stride;
+            for (int i = 0; i < key.length; i++)
+                if (this.words.get(offset + i) != key[i]) return false;
+            return true;
+        }
+    }
+
+    private interface EntryConsumer {
+
+        void accept(long[] entry) throws IOException;
+    }
+
+    /**
+     * Sequential reader of a run file, holding the entry it has read last
+     */
+    private class RunReader {
+
+        private final DataInputStream in;
+        private final int index;
+        private final long[] entry;
+
+        RunReader(Path run, int index) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), RUN_BUFFER_SIZE));
+            this.index = index;
+            this.entry = new long[CandidateFrontier.this.stride];
+        }
+
+        /**
+         * Read the next entry
+         *
+         * @return false if the run is exhausted
+         */
+        boolean next() throws IOException {
+            try {
+                this.entry[0] = this.in.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            for (int i = 1; i < this.entry.length; i++)
+                this.entry[i] = this.in.readLong();
+            return true;
+        }
+
+        void close() {
+            try {
+                this.in.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Fixed number of long words split into pages, so tables are not limited by the maximum array length
+     */
+    private interface Words {
+
+        int PAGE_SHIFT = 20;
+        int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
+        long get(long index);
+
+        void set(long index, long value);
+
+        static int nPages(long length) {
+            return (int) ((length + PAGE_MASK) >>> PAGE_SHIFT);
+        }
+
+        static int pageLength(long length, int page) {
+            return (int) Math.min(1 << PAGE_SHIFT, length - ((long) page << PAGE_SHIFT));
+        }
+    }
+
+    private static class HeapWords implements Words {
+
+        private final long[][] pages;
+
+        HeapWords(long length) {
+            this.pages = new long[Words.nPages(length)][];
+            for (int i = 0; i < this.pages.length; i++)
+                this.pages[i] = new long[Words.pageLength(length, i)];
+        }
+
+        @Override
+        public long get(long index) {
+            return this.pages[(int) (index >>> PAGE_SHIFT)][(int) index & PAGE_MASK];
+        }
+
+        @Override
+        public void set(long index, long value) {
+            this.pages[(int) (index >>> PAGE_SHIFT)][(int) index & PAGE_MASK] = value;
+        }
+    }
+
+    /**
+     * Pages in direct buffers, they are released once the table is garbage collected
+     */
+    private static class DirectWords implements Words {
+
+        private final LongBuffer[] pages;
+
+        DirectWords(long length) {
+            this.pages = new LongBuffer[Words.nPages(length)];
+            for (int i = 0; i < this.pages.length; i++)
+                this.pages[i] = ByteBuffer.allocateDirect(Words.pageLength(length, i) * Long.BYTES)
+                        .order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+
+        @Override
+        public long get(long index) {
+            return this.pages[(int) (index >>> PAGE_SHIFT)].get((int) index & PAGE_MASK);
+        }
+
+        @Override
+        public void set(long index, long value) {
+            this.pages[(int) (index >>> PAGE_SHIFT)].put((int) index & PAGE_MASK, value);
+        }
+    }
+}
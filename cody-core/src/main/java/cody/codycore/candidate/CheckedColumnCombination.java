@@ -1,9 +1,11 @@
 package cody.codycore.candidate;
 
+import lombok.AllArgsConstructor;
 import lombok.Value;
 import lombok.experimental.Delegate;
 
 @Value
+@AllArgsConstructor
 public class CheckedColumnCombination {
 
     /**
@@ -17,16 +19,25 @@ public class CheckedColumnCombination {
      */
     double support;
 
+    /**
+     * Indicates that the check stopped early, support is then only an upper bound below the minimum support
+     */
+    boolean upperBound;
+
+    public CheckedColumnCombination(ColumnCombination columnCombination, double support) {
+        this(columnCombination, support, false);
+    }
+
     public String toString(String[] indexToNameMapping) {
         StringBuilder result = new StringBuilder();
         result.append("CheckedColumnCombination(left=[");
         for (int i = this.getLeft().nextSetBit(0); i != -1; i = this.getLeft().nextSetBit(i + 1)) {
-            result.append(indexToNameMapping[i]).append(", ");
+            result.append(ColumnCombinationUtils.getColumnName(indexToNameMapping, i)).append(", ");
         }
         result.delete(result.length() - 2, result.length());
         result.append("], right=[");
         for (int i = this.getRight().nextSetBit(0); i != -1; i = this.getRight().nextSetBit(i + 1)) {
-            result.append(indexToNameMapping[i]).append(", ");
+            result.append(ColumnCombinationUtils.getColumnName(indexToNameMapping, i)).append(", ");
         }
         result.delete(result.length() - 2, result.length());
         result.append("], support=");
@@ -1,6 +1,6 @@
 package cody.codycore.candidate;
 
-import ch.javasoft.bitset.LongBitSet;
+import ch.javasoft.bitset.IBitSet;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NonNull;
@@ -13,12 +13,12 @@ public class ColumnCombination {
     /**
      * Indicates left-hand side columns
      */
-    @NonNull LongBitSet left;
+    @NonNull IBitSet left;
 
     /**
      * Indicates right-hand side columns
      */
-    @NonNull LongBitSet right;
+    @NonNull IBitSet right;
 
     /**
      * Convenience access to left join right for hashing
@@ -26,10 +26,10 @@ public class ColumnCombination {
     @ToString.Exclude
     @EqualsAndHashCode.Exclude
     @Getter(lazy = true)
-    LongBitSet columns = this.joinLeftRight();
+    IBitSet columns = this.joinLeftRight();
 
-    private LongBitSet joinLeftRight() {
-        return LongBitSet.getOr(this.getLeft(), this.getRight());
+    private IBitSet joinLeftRight() {
+        return this.getLeft().getOr(this.getRight());
     }
 
     public String toString() {
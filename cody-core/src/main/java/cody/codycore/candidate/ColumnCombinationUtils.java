@@ -1,5 +1,6 @@
 package cody.codycore.candidate;
 
+import ch.javasoft.bitset.IBitSet;
 import ch.javasoft.bitset.LongBitSet;
 import com.google.common.collect.ImmutableList;
 import lombok.experimental.UtilityClass;
@@ -22,7 +23,7 @@ public class ColumnCombinationUtils {
 
         if (c.getLeft().cardinality() > 1) {
             for (int i = c.getLeft().nextSetBit(0); i != -1; i = c.getLeft().nextSetBit(i + 1)) {
-                LongBitSet newLeft = c.getLeft().clone();
+                IBitSet newLeft = c.getLeft().clone();
                 newLeft.clear(i);
                 result.add(new ColumnCombination(newLeft, c.getRight()));
             }
@@ -30,7 +31,7 @@ public class ColumnCombinationUtils {
 
         if (c.getRight().cardinality() > 1) {
             for (int i = c.getRight().nextSetBit(0); i != -1; i = c.getRight().nextSetBit(i + 1)) {
-                LongBitSet newRight = c.getRight().clone();
+                IBitSet newRight = c.getRight().clone();
                 newRight.clear(i);
                 result.add(new ColumnCombination(c.getLeft(), newRight));
             }
@@ -39,6 +40,19 @@ public class ColumnCombinationUtils {
         return ImmutableList.copyOf(result);
     }
 
+    /**
+     * Get the name of a column, datasets without header use the column index as name
+     *
+     * @param indexToNameMapping column names, null if the dataset has no header
+     */
+    public String getColumnName(String[] indexToNameMapping, int index) {
+        return indexToNameMapping == null ? Integer.toString(index) : indexToNameMapping[index];
+    }
+
+    /**
+     * Map the columns of c back to all of their duplicate columns in the original dataset
+     * The inflated sets may exceed the width of the deduplicated columns, so they are always LongBitSets
+     */
     public CheckedColumnCombination inflateDuplicateColumns(CheckedColumnCombination c,
                                         List<List<Integer>> columnIndexToDuplicatesMapping) {
         LongBitSet inflatedLeft = new LongBitSet();
@@ -53,6 +67,7 @@ public class ColumnCombinationUtils {
                 inflatedRight.set(j);
         }
 
-        return new CheckedColumnCombination(new ColumnCombination(inflatedLeft, inflatedRight), c.getSupport());
+        return new CheckedColumnCombination(new ColumnCombination(inflatedLeft, inflatedRight), c.getSupport(),
+                c.isUpperBound());
     }
 }
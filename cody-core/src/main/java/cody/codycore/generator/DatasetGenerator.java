@@ -0,0 +1,272 @@
+package cody.codycore.generator;
+
+import ch.javasoft.bitset.IBitSet;
+import ch.javasoft.bitset.LongBitSet;
+import cody.codycore.candidate.ColumnCombination;
+import cody.codycore.ingest.FrozenPlis;
+import cody.codycore.ingest.NullPatternDeduplicator;
+import cody.codycore.ingest.PliSnapshot;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.MultimapBuilder;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+
+/**
+ * Generates synthetic datasets with planted Codys, reproducible from a seed
+ * The first columns hold the planted Codys, each a group of arity columns whose left part is null exactly when the
+ * right part is not. A share of the rows of each approximate Cody has one column of the group flipped. The other
+ * distinct columns are null at random, the remaining columns copy a random distinct column. Rows are generated one
+ * by one, so CSV files of any size are streamed without being held in memory.
+ */
+@Slf4j
+public class DatasetGenerator {
+
+    public enum Format {
+        CSV, SNAPSHOT
+    }
+
+    private static final String NON_NULL_VALUE = "1";
+
+    /**
+     * Number of rows generated per requested distinct pattern before giving up, small or planted-only datasets
+     * may not have that many patterns
+     */
+    private static final int PATTERN_ATTEMPTS = 64;
+
+    private final GeneratorConfiguration configuration;
+    private final int nDistinctColumns;
+    private final int nPlantedColumns;
+    private final int leftArity;
+    private final int[] sourceColumns;
+    private final long rowSeed;
+
+    /**
+     * Planted exact Codys, columns in a Cody's left or right part are duplicates of each other
+     */
+    @Getter private final List<ColumnCombination> exactCodys;
+
+    /**
+     * Planted approximate Codys, each with a support of about 1 - noise
+     */
+    @Getter private final List<ColumnCombination> approximateCodys;
+
+    public DatasetGenerator(@NonNull GeneratorConfiguration configuration) {
+        if (configuration.getRows() < 0 || configuration.getColumns() < 1)
+            throw new IllegalArgumentException("Cannot generate a dataset without columns or with negative rows");
+        if (configuration.getArity() < 2)
+            throw new IllegalArgumentException("A Cody needs an arity of at least 2");
+        if (configuration.getNoise() < 0.0 || configuration.getNoise() > 1.0 ||
+                configuration.getNullDensity() < 0.0 || configuration.getNullDensity() > 1.0 ||
+                configuration.getDuplicateRatio() < 0.0 || configuration.getDuplicateRatio() >= 1.0)
+            throw new IllegalArgumentException("Noise, null density and duplicate ratio have to be shares");
+        if (configuration.getDistinctPatterns() == 0 || configuration.getDistinctPatterns() < -1)
+            throw new IllegalArgumentException("Cannot generate rows from " + configuration.getDistinctPatterns() +
+                    " distinct patterns");
+        if (NON_NULL_VALUE.equals(configuration.getNullValue()))
+            throw new IllegalArgumentException("Null value must not be " + NON_NULL_VALUE);
+
+        this.configuration = configuration;
+        int nColumns = configuration.getColumns();
+        this.nDistinctColumns = Math.max(1, (int) Math.round(nColumns * (1 - configuration.getDuplicateRatio())));
+        this.nPlantedColumns = (configuration.getExactCodys() + configuration.getApproximateCodys()) *
+                configuration.getArity();
+        if (this.nPlantedColumns > this.nDistinctColumns)
+            throw new IllegalArgumentException("Planted Codys need " + this.nPlantedColumns + " columns, but only " +
+                    this.nDistinctColumns + " distinct columns are generated");
+        this.leftArity = configuration.getArity() / 2;
+
+        SplittableRandom random = new SplittableRandom(configuration.getSeed());
+        this.sourceColumns = new int[nColumns];
+        for (int i = 0; i < nColumns; i++)
+            this.sourceColumns[i] = i < this.nDistinctColumns ? i : random.nextInt(this.nDistinctColumns);
+        this.rowSeed = random.nextLong();
+
+        List<ColumnCombination> exactCodys = new ArrayList<>();
+        List<ColumnCombination> approximateCodys = new ArrayList<>();
+        for (int start = 0; start < this.nPlantedColumns; start += configuration.getArity()) {
+            IBitSet left = new LongBitSet(nColumns);
+            IBitSet right = new LongBitSet(nColumns);
+            for (int j = 0; j < configuration.getArity(); j++)
+                (j < this.leftArity ? left : right).set(start + j);
+
+            if (start < configuration.getExactCodys() * configuration.getArity()) {
+                exactCodys.add(new ColumnCombination(left, right));
+            } else {
+                approximateCodys.add(new ColumnCombination(left, right));
+            }
+        }
+        this.exactCodys = ImmutableList.copyOf(exactCodys);
+        this.approximateCodys = ImmutableList.copyOf(approximateCodys);
+    }
+
+    /**
+     * Call the consumer with the null mask of every row, laid out like the masks of a NullPatternDeduplicator
+     * The mask is reused for every row and must not be modified. Every call generates the same rows.
+     */
+    public void forEachRow(@NonNull Consumer<long[]> consumer) {
+        SplittableRandom random = new SplittableRandom(this.rowSeed);
+        boolean[] isNull = new boolean[this.nDistinctColumns];
+
+        if (this.configuration.getDistinctPatterns() == -1) {
+            long[] mask = new NullPatternDeduplicator(this.configuration.getColumns()).createMask();
+            for (long row = 0; row < this.configuration.getRows(); row++) {
+                this.generateRow(random, isNull, mask);
+                consumer.accept(mask);
+            }
+        } else {
+            long[][] patterns = this.createPatterns(random, isNull);
+            for (long row = 0; row < this.configuration.getRows(); row++)
+                consumer.accept(patterns[random.nextInt(patterns.length)]);
+        }
+    }
+
+    /**
+     * Stream the dataset as CSV to the given file
+     */
+    public void writeCsv(@NonNull Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            this.writeCsv(writer);
+        }
+    }
+
+    /**
+     * Stream the dataset as CSV to the given writer, which is not closed
+     */
+    public void writeCsv(@NonNull Writer writer) throws IOException {
+        char delimiter = this.configuration.getDelimiter();
+        StringBuilder line = new StringBuilder();
+        if (!this.configuration.isNoHeader()) {
+            String[] names = this.createColumnNames();
+            for (int i = 0; i < names.length; i++)
+                line.append(i == 0 ? "" : String.valueOf(delimiter)).append(names[i]);
+            writer.write(line.append('\n').toString());
+        }
+
+        try {
+            this.forEachRow(mask -> {
+                line.setLength(0);
+                for (int i = 0; i < this.configuration.getColumns(); i++) {
+                    if (i > 0) line.append(delimiter);
+                    line.append((mask[i >>> 6] & (1L << i)) != 0L
+                            ? this.configuration.getNullValue()
+                            : NON_NULL_VALUE);
+                }
+                try {
+                    writer.write(line.append('\n').toString());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Deduplicate the rows and columns of the dataset into a snapshot, equal to the one the Preprocessor creates
+     * from the CSV file. Only the distinct rows are held in memory.
+     */
+    public PliSnapshot createSnapshot() {
+        if (this.configuration.getRows() > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("A snapshot holds at most " + Integer.MAX_VALUE + " rows");
+
+        NullPatternDeduplicator rowDeduplicator = new NullPatternDeduplicator(this.configuration.getColumns());
+        List<MutableRoaringBitmap> columnPlis = new ArrayList<>(this.configuration.getColumns());
+        for (int i = 0; i < this.configuration.getColumns(); i++)
+            columnPlis.add(new MutableRoaringBitmap());
+
+        this.forEachRow(mask -> {
+            int nRowsDistinct = rowDeduplicator.size();
+            int index = rowDeduplicator.add(mask, 1);
+            if (index == nRowsDistinct)
+                rowDeduplicator.forEachNullColumn(index, i -> columnPlis.get(i).add(index));
+        });
+
+        ListMultimap<ImmutableRoaringBitmap, Integer> deduplicator =
+                MultimapBuilder.linkedHashKeys().arrayListValues().build();
+        for (int i = 0; i < columnPlis.size(); i++)
+            deduplicator.put(columnPlis.get(i).toImmutableRoaringBitmap(), i);
+
+        List<List<Integer>> duplicates = new ArrayList<>(deduplicator.keySet().size());
+        for (ImmutableRoaringBitmap pli : deduplicator.keySet())
+            duplicates.add(ImmutableList.copyOf(deduplicator.get(pli)));
+
+        log.info("Deduplicated {} rows to {}, {} columns to {}", this.configuration.getRows(), rowDeduplicator.size(),
+                columnPlis.size(), duplicates.size());
+        List<ImmutableRoaringBitmap> plis = new ArrayList<>(duplicates.size());
+        for (ImmutableRoaringBitmap pli : deduplicator.keySet())
+            plis.add(FrozenPlis.compact(pli));
+
+        return new PliSnapshot(ImmutableList.copyOf(plis), ImmutableList.copyOf(duplicates),
+                this.configuration.isNoHeader() ? null : this.createColumnNames(),
+                (int) this.configuration.getRows(), rowDeduplicator.getCounts());
+    }
+
+    /**
+     * Write the dataset as snapshot to the given file, its key describes the generator options
+     */
+    public void writeSnapshot(@NonNull Path file) throws IOException {
+        this.createSnapshot().write(file, "generated " + this.configuration);
+    }
+
+    private void generateRow(SplittableRandom random, boolean[] isNull, long[] mask) {
+        int arity = this.configuration.getArity();
+        int nExactColumns = this.configuration.getExactCodys() * arity;
+        for (int start = 0; start < this.nPlantedColumns; start += arity) {
+            boolean leftIsNull = random.nextBoolean();
+            for (int j = 0; j < arity; j++)
+                isNull[start + j] = (j < this.leftArity) == leftIsNull;
+
+            if (start >= nExactColumns && random.nextDouble() < this.configuration.getNoise()) {
+                int flipped = start + random.nextInt(arity);
+                isNull[flipped] = !isNull[flipped];
+            }
+        }
+        for (int i = this.nPlantedColumns; i < this.nDistinctColumns; i++)
+            isNull[i] = random.nextDouble() < this.configuration.getNullDensity();
+
+        Arrays.fill(mask, 0L);
+        for (int i = 0; i < this.sourceColumns.length; i++)
+            if (isNull[this.sourceColumns[i]]) mask[i >>> 6] |= 1L << i;
+    }
+
+    private long[][] createPatterns(SplittableRandom random, boolean[] isNull) {
+        int nPatterns = this.configuration.getDistinctPatterns();
+        NullPatternDeduplicator deduplicator = new NullPatternDeduplicator(this.configuration.getColumns());
+        List<long[]> patterns = new ArrayList<>(nPatterns);
+        long[] mask = deduplicator.createMask();
+        for (long attempt = 0; attempt < (long) nPatterns * PATTERN_ATTEMPTS && patterns.size() < nPatterns; attempt++) {
+            this.generateRow(random, isNull, mask);
+            if (deduplicator.add(mask, 1) == patterns.size())
+                patterns.add(mask.clone());
+        }
+
+        if (patterns.size() < nPatterns)
+            log.warn("Found only {} of {} distinct patterns", patterns.size(), nPatterns);
+        return patterns.toArray(new long[0][]);
+    }
+
+    private String[] createColumnNames() {
+        String[] names = new String[this.configuration.getColumns()];
+        for (int i = 0; i < names.length; i++)
+            names[i] = "c" + i;
+        return names;
+    }
+}
@@ -0,0 +1,65 @@
+package cody.codycore.generator;
+
+import cody.codycore.Configuration;
+import com.beust.jcommander.Parameter;
+import lombok.Data;
+
+@Data
+public class GeneratorConfiguration {
+
+    @Parameter(names = {"--output", "-o"}, description = "Path of the generated CSV file or PLI snapshot",
+            required = true)
+    String outputPath;
+
+    @Parameter(names = {"--format"}, description = "Write a CSV file or a binary PLI snapshot, which can be passed " +
+            "to the CLI app as --path directly")
+    DatasetGenerator.Format format = DatasetGenerator.Format.CSV;
+
+    @Parameter(names = {"--seed"}, description = "Seed of the random generator, the same seed and options always " +
+            "generate the same dataset")
+    long seed = 42;
+
+    @Parameter(names = {"--rows", "-r"}, description = "Number of rows")
+    long rows = 10000;
+
+    @Parameter(names = {"--columns", "-c"}, description = "Number of columns, including duplicates")
+    int columns = 20;
+
+    @Parameter(names = {"--exact"}, description = "Number of planted exact Codys")
+    int exactCodys = 1;
+
+    @Parameter(names = {"--approximate"}, description = "Number of planted approximate Codys")
+    int approximateCodys = 1;
+
+    @Parameter(names = {"--arity"}, description = "Number of columns of each planted Cody, split evenly into left " +
+            "and right")
+    int arity = 4;
+
+    @Parameter(names = {"--noise"}, description = "Share of rows violating each approximate Cody, the Cody's support " +
+            "is about 1 - noise")
+    double noise = 0.02;
+
+    @Parameter(names = {"--null-density"}, description = "Probability of a null cell in the columns without a " +
+            "planted Cody")
+    double nullDensity = 0.5;
+
+    @Parameter(names = {"--duplicate-ratio"}, description = "Share of columns which copy another column")
+    double duplicateRatio = 0.0;
+
+    @Parameter(names = {"--distinct-patterns"}, description = "Draw every row from this many distinct null patterns " +
+            "(-1 for no limit)")
+    int distinctPatterns = -1;
+
+    @Parameter(names = {"--no-header"}, description = "Do not write a header line with column names")
+    boolean noHeader = false;
+
+    @Parameter(names = {"--del", "-d"}, description = "Delimiter of the CSV file", converter =
+            Configuration.StringToCharConverter.class)
+    char delimiter = ',';
+
+    @Parameter(names = {"--null"}, description = "Null value of the CSV file")
+    String nullValue = "";
+
+    @Parameter(names = {"--help", "-h"}, description = "Show this help page", help = true)
+    boolean help;
+}
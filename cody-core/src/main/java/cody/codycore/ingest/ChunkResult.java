@@ -0,0 +1,22 @@
+package cody.codycore.ingest;
+
+import lombok.Value;
+
+@Value
+public class ChunkResult {
+
+    /**
+     * First record of the dataset (header or first row), only set for the first chunk
+     */
+    String[] firstRecord;
+
+    /**
+     * Distinct null patterns of this chunk with their counts, indexed in order of first occurrence within the chunk
+     */
+    NullPatternDeduplicator patterns;
+
+    /**
+     * Indicates the number of rows parsed in this chunk (also counting duplicates)
+     */
+    int nRows;
+}
@@ -0,0 +1,396 @@
+package cody.codycore.ingest;
+
+import cody.codycore.Configuration;
+import cody.codycore.jfr.CodyEvents;
+import com.univocity.parsers.csv.CsvFormat;
+import com.univocity.parsers.csv.CsvParser;
+import com.univocity.parsers.csv.CsvParserSettings;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Memory-maps a dataset, splits it into newline-aligned chunks and parses the chunks on a worker pool
+ * Chunk boundaries are never placed inside a quoted value, so every chunk consists of complete records
+ */
+@Slf4j
+public class ChunkedCsvReader {
+
+    /**
+     * Largest chunk size, a chunk extends at most into the following segment, so chunks stay below the 2 GB that can
+     * be mapped at once unless a record spans whole segments
+     */
+    public static final int MAX_CHUNK_SIZE = 1 << 30;
+
+    private static final int BLOCK_SIZE = 1 << 20;
+    private static final int PREFIX_BLOCK_SIZE = 1 << 16;
+
+    private final Configuration configuration;
+    private final CsvParserSettings settings;
+    private final boolean fastNullScan;
+    private final ThreadLocal<byte[]> scanWindow = ThreadLocal.withInitial(() -> new byte[BLOCK_SIZE]);
+
+    public ChunkedCsvReader(@NonNull Configuration configuration, @NonNull CsvParserSettings settings) {
+        if (configuration.getChunkSize() <= 0 || configuration.getChunkSize() > MAX_CHUNK_SIZE)
+            throw new IllegalArgumentException("Chunk size must be between 1 and " + MAX_CHUNK_SIZE +
+                    " bytes, but was " + configuration.getChunkSize());
+        if (configuration.getParallelism() <= 0)
+            throw new IllegalArgumentException("Number of threads must be positive, but was " +
+                    configuration.getParallelism());
+
+        this.configuration = configuration;
+        this.settings = settings.clone();
+        // lines are skipped while splitting, the row limit is not supported in chunked mode
+        this.settings.setNumberOfRowsToSkip(0);
+        this.settings.setNumberOfRecordsToRead(-1);
+        this.settings.setReadInputOnSeparateThread(false);
+
+        CsvFormat format = this.settings.getFormat();
+        this.fastNullScan = configuration.isFastNullScan() &&
+                NullPatternScanner.supports(format.getDelimiter(), format.getQuote(), format.getQuoteEscape());
+        if (configuration.isFastNullScan() && !this.fastNullScan)
+            log.warn("Fast null scan requires single-byte delimiter and quote chars, falling back to the CSV parser");
+    }
+
+    /**
+     * Parse all chunks in parallel and hand the results to the consumer in file order
+     *
+     * @param consumer called once per chunk, the first chunk only holds the first record of the dataset
+     * @throws IOException if the file cannot be mapped, a chunk cannot be parsed or is too large to be mapped
+     */
+    public void read(Consumer<ChunkResult> consumer) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(this.configuration.getParallelism());
+        try (FileChannel channel = FileChannel.open(Paths.get(this.configuration.getPath()),
+                StandardOpenOption.READ)) {
+            long[] boundaries = this.split(channel, executor);
+            if (boundaries.length < 2)
+                return;
+            log.info("Split {} bytes into {} chunks", channel.size(), boundaries.length - 1);
+
+            // the first record determines the number of columns, all other chunks depend on it
+            ChunkResult first = this.parseChunk(channel, boundaries[0], boundaries[1], -1);
+            consumer.accept(first);
+            if (first.getFirstRecord() == null)
+                return;
+            final int nColumns = first.getFirstRecord().length;
+
+            List<Future<ChunkResult>> futures = new ArrayList<>(boundaries.length);
+            for (int i = 1; i + 1 < boundaries.length; i++) {
+                final long start = boundaries[i];
+                final long end = boundaries[i + 1];
+                futures.add(executor.submit(() -> this.parseChunk(channel, start, end, nColumns)));
+            }
+
+            for (Future<ChunkResult> future : futures)
+                consumer.accept(future.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing chunks", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to parse chunk", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Find chunk boundaries of roughly the configured chunk size, each placed right after a line break outside
+     * of quotes. Lines to skip are consumed before the first boundary, the first chunk only spans the first
+     * record. Quotes are tracked by parity, which holds as long as quotes inside values are escaped.
+     */
+    private long[] split(FileChannel channel, ExecutorService executor)
+            throws IOException, InterruptedException, ExecutionException {
+        long size = channel.size();
+        long[] firstRecord = this.findFirstRecord(channel);
+        if (firstRecord == null)
+            return new long[0];
+
+        LongArrayList boundaries = new LongArrayList();
+        boundaries.add(firstRecord[0]);
+        boundaries.add(firstRecord[1]);
+
+        // summarize fixed segments in parallel, each can then be resolved once the quote parity before it is known
+        long chunkSize = this.configuration.getChunkSize();
+        List<Future<SegmentSummary>> summaries = new ArrayList<>();
+        for (long start = firstRecord[1]; start < size; start += chunkSize) {
+            final long segmentStart = start;
+            final long segmentEnd = Math.min(size, start + chunkSize);
+            summaries.add(executor.submit(() -> this.summarizeSegment(channel, segmentStart, segmentEnd)));
+        }
+
+        boolean quoted = false;
+        for (int i = 0; i < summaries.size(); i++) {
+            SegmentSummary summary = summaries.get(i).get();
+            // the first segment directly follows a boundary, the others end the chunk started before them
+            long boundary = quoted ? summary.firstOddBreak : summary.firstEvenBreak;
+            if (i > 0 && boundary != -1)
+                boundaries.add(boundary);
+            quoted ^= summary.oddQuotes;
+        }
+
+        if (boundaries.getLong(boundaries.size() - 1) < size)
+            boundaries.add(size);
+
+        // a record without a usable line break across whole segments merges them into one chunk
+        for (int i = 0; i + 1 < boundaries.size(); i++) {
+            long length = boundaries.getLong(i + 1) - boundaries.getLong(i);
+            if (length > Integer.MAX_VALUE)
+                throw new IOException("Chunk at byte " + boundaries.getLong(i) + " spans " + length + " bytes " +
+                        "without a line break outside of quotes, more than the " + Integer.MAX_VALUE +
+                        " bytes that can be mapped at once, read the dataset without --parallel-ingest and " +
+                        "--fast-null-scan instead");
+        }
+
+        return boundaries.toLongArray();
+    }
+
+    /**
+     * Skip the configured number of lines and find the end of the first record which is neither empty nor a comment
+     *
+     * @return start and end of the first chunk, or null if the file contains no record
+     */
+    private long[] findFirstRecord(FileChannel channel) throws IOException {
+        CsvFormat format = this.settings.getFormat();
+        byte[] block = new byte[PREFIX_BLOCK_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(block);
+
+        int linesToSkip = this.configuration.getSkipLines();
+        long start = 0;
+        boolean quoted = false;
+        boolean lineStart = true;
+        boolean hasContent = false;
+        boolean comment = false;
+        byte previous = 0;
+
+        long position = 0;
+        int length;
+        while ((length = channel.read(buffer, position)) > 0) {
+            for (int i = 0; i < length; i++) {
+                byte b = block[i];
+                if (linesToSkip > 0) {
+                    if (b == '\n' && --linesToSkip == 0)
+                        start = position + i + 1;
+                } else if (this.isQuote(format, b, previous)) {
+                    quoted = !quoted;
+                    hasContent = true;
+                } else if (b == '\n' && !quoted) {
+                    if (hasContent && !comment)
+                        return new long[]{start, position + i + 1};
+                    lineStart = true;
+                    hasContent = false;
+                    comment = false;
+                    continue;
+                } else if (lineStart && b == format.getComment()) {
+                    comment = true;
+                } else if ((b & 0xFF) > ' ' || b == format.getDelimiter()) {
+                    hasContent = true;
+                }
+                lineStart = false;
+                previous = b;
+            }
+            position += length;
+            buffer.clear();
+        }
+
+        return linesToSkip > 0 || !hasContent || comment ? null : new long[]{start, position};
+    }
+
+    private SegmentSummary summarizeSegment(FileChannel channel, long start, long end) throws IOException {
+        CsvFormat format = this.settings.getFormat();
+        MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        SegmentSummary summary = new SegmentSummary();
+
+        byte previous = 0;
+        if (start > 0) {
+            ByteBuffer single = ByteBuffer.allocate(1);
+            channel.read(single, start - 1);
+            previous = single.get(0);
+        }
+
+        // bulk copies into a heap array are much faster to iterate than single gets on the mapped buffer
+        byte[] block = new byte[BLOCK_SIZE];
+        for (int blockStart = 0; blockStart < segment.limit(); blockStart += block.length) {
+            int blockLength = Math.min(block.length, segment.limit() - blockStart);
+            segment.get(block, 0, blockLength);
+            for (int i = 0; i < blockLength; i++) {
+                byte b = block[i];
+                if (this.isQuote(format, b, previous)) {
+                    summary.oddQuotes = !summary.oddQuotes;
+                } else if (b == '\n') {
+                    if (!summary.oddQuotes && summary.firstEvenBreak == -1) {
+                        summary.firstEvenBreak = start + blockStart + i + 1;
+                    } else if (summary.oddQuotes && summary.firstOddBreak == -1) {
+                        summary.firstOddBreak = start + blockStart + i + 1;
+                    }
+                }
+                previous = b;
+            }
+        }
+
+        return summary;
+    }
+
+    private boolean isQuote(CsvFormat format, byte b, byte previous) {
+        return format.getQuote() != '\0' && b == (byte) format.getQuote() &&
+                (format.getQuoteEscape() == format.getQuote() || previous != (byte) format.getQuoteEscape());
+    }
+
+    /**
+     * Parse a chunk, nColumns is -1 for the first chunk whose first record determines the number of columns
+     */
+    private ChunkResult parseChunk(FileChannel channel, long start, long end, int nColumns) throws IOException {
+        CodyEvents.Span event = CodyEvents.beginChunkParsed();
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        ChunkResult result = nColumns != -1 && this.fastNullScan
+                ? this.scanChunk(buffer, nColumns)
+                : this.parseRecords(buffer, nColumns);
+        CodyEvents.endChunkParsed(event, start, end - start, result.getNRows(), result.getPatterns().size());
+        return result;
+    }
+
+    private ChunkResult parseRecords(MappedByteBuffer buffer, int nColumns) {
+        CsvParser parser = new CsvParser(this.settings.clone());
+        parser.beginParsing(new InputStreamReader(new ByteBufferInputStream(buffer), Charset.defaultCharset()));
+
+        String[] firstRecord = null;
+        if (nColumns == -1) {
+            firstRecord = parser.parseNext();
+            nColumns = firstRecord == null ? 0 : firstRecord.length;
+        }
+
+        NullPatternDeduplicator patterns = new NullPatternDeduplicator(nColumns);
+        long[] mask = patterns.createMask();
+        String nullValue = this.configuration.getNullValue();
+        int nRows = 0;
+
+        if (firstRecord != null && this.configuration.isNoHeader()) {
+            patterns.add(this.fillNullMask(mask, firstRecord, nColumns, nullValue), 1);
+            nRows++;
+        }
+
+        String[] row;
+        while ((row = parser.parseNext()) != null) {
+            patterns.add(this.fillNullMask(mask, row, nColumns, nullValue), 1);
+            nRows++;
+        }
+
+        return new ChunkResult(firstRecord, patterns, nRows);
+    }
+
+    /**
+     * Scan the chunk through a window of BLOCK_SIZE bytes instead of copying it to the heap as a whole
+     * Each window is scanned up to its last line break outside of quotes, the partial record after it is moved to
+     * the front and completed by the next block. Quotes are tracked by parity like in split, the window only grows
+     * for a record that does not fit into it.
+     */
+    private ChunkResult scanChunk(MappedByteBuffer buffer, int nColumns) {
+        CsvFormat format = this.settings.getFormat();
+        NullPatternScanner scanner = new NullPatternScanner(format.getDelimiter(), format.getQuote(),
+                format.getQuoteEscape(), format.getComment(),
+                this.configuration.getNullValue().getBytes(Charset.defaultCharset()), nColumns);
+        NullPatternDeduplicator patterns = new NullPatternDeduplicator(nColumns);
+        int nRows = 0;
+
+        byte[] window = this.scanWindow.get();
+        int filled = 0;
+        int tracked = 0;
+        int recordsEnd = 0;
+        boolean quoted = false;
+        byte previous = 0;
+        while (buffer.hasRemaining() || filled > 0) {
+            if (buffer.hasRemaining()) {
+                if (filled == window.length) {
+                    window = Arrays.copyOf(window, 2 * window.length);
+                    this.scanWindow.set(window);
+                }
+                int length = Math.min(window.length - filled, buffer.remaining());
+                buffer.get(window, filled, length);
+                filled += length;
+                for (; tracked < filled; tracked++) {
+                    byte b = window[tracked];
+                    if (this.isQuote(format, b, previous)) {
+                        quoted = !quoted;
+                    } else if (b == '\n' && !quoted) {
+                        recordsEnd = tracked + 1;
+                    }
+                    previous = b;
+                }
+            } else {
+                // the chunk ends with a complete record, even without a final line break
+                recordsEnd = filled;
+            }
+
+            nRows += scanner.scan(window, 0, recordsEnd, patterns);
+            System.arraycopy(window, recordsEnd, window, 0, filled - recordsEnd);
+            filled -= recordsEnd;
+            tracked -= recordsEnd;
+            recordsEnd = 0;
+        }
+
+        return new ChunkResult(null, patterns, nRows);
+    }
+
+    private long[] fillNullMask(long[] mask, String[] row, int nColumns, String nullValue) {
+        Arrays.fill(mask, 0L);
+        for (int i = 0; i < Math.min(row.length, nColumns); i++)
+            if (row[i].equals(nullValue)) mask[i >>> 6] |= 1L << i;
+
+        return mask;
+    }
+
+    /**
+     * Quote parity of a segment and the first line breaks found with an even and odd number of quotes before them
+     */
+    private static class SegmentSummary {
+        boolean oddQuotes = false;
+        long firstEvenBreak = -1;
+        long firstOddBreak = -1;
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!this.buffer.hasRemaining())
+                return -1;
+
+            int n = Math.min(length, this.buffer.remaining());
+            this.buffer.get(bytes, offset, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return this.buffer.remaining();
+        }
+    }
+}
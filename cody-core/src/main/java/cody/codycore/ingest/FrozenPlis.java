@@ -0,0 +1,144 @@
+package cody.codycore.ingest;
+
+import com.google.common.collect.ImmutableList;
+import lombok.NonNull;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+import org.roaringbitmap.buffer.MutableRoaringBitmap;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * PLIs serialized back to back into one contiguous buffer, read through ImmutableRoaringBitmap views on it
+ * The views hold no containers of their own, so the buffer can be allocated in direct memory and takes the PLIs out of
+ * the heap. Containers of views read their values through the buffer, which makes intersections slower than on
+ * MutableRoaringBitmaps, so PLIs are only frozen if they should live off-heap.
+ */
+public class FrozenPlis {
+
+    private final ByteBuffer buffer;
+
+    /**
+     * Start of each PLI in the buffer, the last entry is the end of the last PLI
+     */
+    private final int[] offsets;
+
+    /**
+     * Allocate a buffer for PLIs of the given serialized sizes, the PLIs are then put into it with set
+     *
+     * @param sizes   serialized size of each PLI in bytes
+     * @param offHeap allocate the buffer in direct memory (limited by -XX:MaxDirectMemorySize)
+     * @throws IllegalArgumentException if the PLIs do not fit into a single buffer of 2 GB
+     */
+    public FrozenPlis(@NonNull int[] sizes, boolean offHeap) {
+        this.offsets = new int[sizes.length + 1];
+        long size = 0L;
+        for (int i = 0; i < sizes.length; i++) {
+            size += sizes[i];
+            if (size > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("PLIs of at least " + size + " bytes exceed the limit of " +
+                        Integer.MAX_VALUE + " bytes of one buffer");
+            this.offsets[i + 1] = (int) size;
+        }
+
+        this.buffer = offHeap ? ByteBuffer.allocateDirect((int) size) : ByteBuffer.allocate((int) size);
+    }
+
+    /**
+     * Run-optimize a PLI if run containers at least halve its serialized size
+     * Rows are deduplicated in order of first occurrence, so a column is often null for long ranges of consecutive
+     * rows, which runs store in a few bytes instead of an array or an 8 KB bitmap per 2^16 rows. Runs of fragmented
+     * PLIs save less and make intersections with arrays slower than they save, so these PLIs are kept as they are.
+     *
+     * @param pli PLI to compact, a MutableRoaringBitmap is optimized in place
+     * @return the compacted PLI
+     */
+    public static MutableRoaringBitmap compact(@NonNull ImmutableRoaringBitmap pli) {
+        MutableRoaringBitmap compacted = pli instanceof MutableRoaringBitmap
+                ? (MutableRoaringBitmap) pli
+                : pli.toMutableRoaringBitmap();
+        compacted.removeRunCompression();
+        int size = compacted.serializedSizeInBytes();
+        if (compacted.runOptimize() && compacted.serializedSizeInBytes() * 2 > size)
+            compacted.removeRunCompression();
+
+        return compacted;
+    }
+
+    /**
+     * Serialize the PLIs into one buffer, PLIs should be compacted before
+     *
+     * @param plis    PLIs to freeze, their order is kept
+     * @param offHeap allocate the buffer in direct memory (limited by -XX:MaxDirectMemorySize)
+     * @throws IllegalArgumentException if the PLIs do not fit into a single buffer of 2 GB
+     */
+    public static FrozenPlis freeze(@NonNull List<? extends ImmutableRoaringBitmap> plis, boolean offHeap) {
+        int[] sizes = new int[plis.size()];
+        for (int i = 0; i < sizes.length; i++)
+            sizes[i] = plis.get(i).serializedSizeInBytes();
+
+        FrozenPlis frozen = new FrozenPlis(sizes, offHeap);
+        for (int i = 0; i < sizes.length; i++)
+            frozen.set(i, plis.get(i));
+
+        return frozen;
+    }
+
+    /**
+     * Serialize a PLI into its place in the buffer, PLIs of different indices may be set concurrently
+     *
+     * @throws IllegalArgumentException if the PLI's serialized size differs from the size it has been allocated with
+     */
+    public void set(int index, @NonNull ImmutableRoaringBitmap pli) {
+        int size = this.offsets[index + 1] - this.offsets[index];
+        if (pli.serializedSizeInBytes() != size)
+            throw new IllegalArgumentException("PLI " + index + " has " + pli.serializedSizeInBytes() +
+                    " bytes instead of " + size);
+
+        ByteBuffer target = this.buffer.duplicate();
+        target.position(this.offsets[index]);
+        pli.serialize(target);
+    }
+
+    /**
+     * Indicates the number of PLIs
+     */
+    public int size() {
+        return this.offsets.length - 1;
+    }
+
+    /**
+     * Indicates the size of the buffer in bytes
+     */
+    public long getSizeInBytes() {
+        return this.buffer.capacity();
+    }
+
+    /**
+     * Indicates if the buffer has been allocated in direct memory
+     */
+    public boolean isOffHeap() {
+        return this.buffer.isDirect();
+    }
+
+    /**
+     * Create a view of a PLI, views are not cached, so callers that read a PLI often should keep it
+     */
+    public ImmutableRoaringBitmap get(int index) {
+        ByteBuffer view = this.buffer.duplicate();
+        view.limit(this.offsets[index + 1]);
+        view.position(this.offsets[index]);
+        return new ImmutableRoaringBitmap(view.slice());
+    }
+
+    /**
+     * Create a view of every PLI
+     */
+    public List<ImmutableRoaringBitmap> getViews() {
+        ImmutableList.Builder<ImmutableRoaringBitmap> views = ImmutableList.builderWithExpectedSize(this.size());
+        for (int i = 0; i < this.size(); i++)
+            views.add(this.get(i));
+
+        return views.build();
+    }
+}
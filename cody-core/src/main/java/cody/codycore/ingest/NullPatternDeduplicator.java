@@ -0,0 +1,194 @@
+package cody.codycore.ingest;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Deduplicates null patterns of rows, each pattern is a bit mask packed into words of a long[]
+ * Keys are stored back to back in insertion order and hashed with open addressing (linear probing),
+ * a pattern is only copied when it is inserted for the first time
+ */
+public class NullPatternDeduplicator {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    /**
+     * Indicates how many longs are used per pattern
+     */
+    private final int words;
+
+    /**
+     * Contains all distinct patterns in insertion order, words longs per pattern
+     */
+    private long[] patterns;
+
+    /**
+     * Maps each distinct pattern index to how often that pattern has been added
+     */
+    private int[] counts;
+
+    /**
+     * Caches the hash of each distinct pattern for cheap probing and rehashing
+     */
+    private int[] hashes;
+
+    /**
+     * Open addressing table with pattern index + 1 per slot, 0 marks an empty slot
+     */
+    private int[] table;
+    private int size;
+
+    public NullPatternDeduplicator(int nColumns) {
+        this.words = Math.max(1, (nColumns + Long.SIZE - 1) / Long.SIZE);
+        this.patterns = new long[INITIAL_CAPACITY * this.words];
+        this.counts = new int[INITIAL_CAPACITY];
+        this.hashes = new int[INITIAL_CAPACITY];
+        this.table = new int[(int) (INITIAL_CAPACITY / LOAD_FACTOR)];
+        this.size = 0;
+    }
+
+    /**
+     * Create a reusable mask with the correct number of words for this deduplicator
+     */
+    public long[] createMask() {
+        return new long[this.words];
+    }
+
+    /**
+     * Add count occurrences of the given pattern
+     *
+     * @param mask  the null pattern, bit i is set if column i is null
+     * @param count how often the pattern occurred
+     * @return the index of the pattern, equal to the previous size() if the pattern is new
+     */
+    public int add(long[] mask, int count) {
+        return this.add(mask, 0, count);
+    }
+
+    /**
+     * Add all occurrences of a pattern of another deduplicator with the same number of columns
+     *
+     * @param other the deduplicator holding the pattern
+     * @param index index of the pattern in other
+     * @return the index of the pattern, equal to the previous size() if the pattern is new
+     */
+    public int add(NullPatternDeduplicator other, int index) {
+        return this.add(other.patterns, index * other.words, other.counts[index]);
+    }
+
+    private int add(long[] source, int offset, int count) {
+        int hash = this.words == 1 ? hash(source[offset]) : hash(source, offset, this.words);
+        int mask = this.table.length - 1;
+        int slot = hash & mask;
+
+        int entry;
+        while ((entry = this.table[slot]) != 0) {
+            int index = entry - 1;
+            if (this.hashes[index] == hash && this.equalsAt(index, source, offset)) {
+                this.counts[index] += count;
+                return index;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int index = this.size++;
+        this.ensureCapacity(this.size);
+        System.arraycopy(source, offset, this.patterns, index * this.words, this.words);
+        this.counts[index] = count;
+        this.hashes[index] = hash;
+
+        if (this.size > this.table.length * LOAD_FACTOR) {
+            this.rehash(this.table.length * 2);
+        } else {
+            this.table[slot] = index + 1;
+        }
+
+        return index;
+    }
+
+    private boolean equalsAt(int index, long[] source, int offset) {
+        int start = index * this.words;
+        for (int i = 0; i < this.words; i++)
+            if (this.patterns[start + i] != source[offset + i]) return false;
+
+        return true;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > this.counts.length) {
+            int newCapacity = Math.max(capacity, this.counts.length * 2);
+            this.patterns = Arrays.copyOf(this.patterns, newCapacity * this.words);
+            this.counts = Arrays.copyOf(this.counts, newCapacity);
+            this.hashes = Arrays.copyOf(this.hashes, newCapacity);
+        }
+    }
+
+    private void rehash(int tableSize) {
+        this.table = new int[tableSize];
+        int mask = tableSize - 1;
+        for (int index = 0; index < this.size; index++) {
+            int slot = this.hashes[index] & mask;
+            while (this.table[slot] != 0)
+                slot = (slot + 1) & mask;
+            this.table[slot] = index + 1;
+        }
+    }
+
+    /**
+     * Call the consumer with every null column of the pattern at the given index
+     */
+    public void forEachNullColumn(int index, IntConsumer consumer) {
+        int start = index * this.words;
+        for (int w = 0; w < this.words; w++) {
+            long word = this.patterns[start + w];
+            while (word != 0L) {
+                consumer.accept(w * Long.SIZE + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+
+    /**
+     * Indicates the number of distinct patterns
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Indicates how often the pattern at the given index has been added
+     */
+    public int getCount(int index) {
+        return this.counts[index];
+    }
+
+    /**
+     * Maps each pattern index to how often that pattern has been added
+     */
+    public int[] getCounts() {
+        return Arrays.copyOf(this.counts, this.size);
+    }
+
+    private static int hash(long word) {
+        return (int) mix(word);
+    }
+
+    private static int hash(long[] source, int offset, int words) {
+        long h = 0L;
+        for (int i = 0; i < words; i++)
+            h = h * 0x9E3779B97F4A7C15L + source[offset + i];
+
+        return (int) mix(h);
+    }
+
+    private static long mix(long h) {
+        // finalizer of MurmurHash3
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb53fe1a85a63L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,158 @@
+package cody.codycore.ingest;
+
+import java.util.Arrays;
+
+/**
+ * Scans raw CSV bytes for cells equal to the null value without materializing any cell as a String
+ * Mirrors the parser settings used by the Preprocessor: unquoted cells are trimmed, quoted cells are taken
+ * verbatim with escaped quotes unescaped, empty lines and lines starting with the comment char are skipped.
+ * Delimiter, quote and escape chars must be single-byte (ASCII) in the file's charset.
+ */
+public class NullPatternScanner {
+
+    private final byte delimiter;
+    private final byte quote;
+    private final byte quoteEscape;
+    private final byte comment;
+    private final boolean quoteEnabled;
+    private final byte[] nullToken;
+    private final int nColumns;
+
+    public NullPatternScanner(char delimiter, char quote, char quoteEscape, char comment, byte[] nullToken,
+                              int nColumns) {
+        this.delimiter = (byte) delimiter;
+        this.quote = (byte) quote;
+        this.quoteEscape = (byte) quoteEscape;
+        this.comment = (byte) comment;
+        this.quoteEnabled = quote != '\0';
+        this.nullToken = nullToken;
+        this.nColumns = nColumns;
+    }
+
+    /**
+     * Indicates if the given chars can be matched byte-wise
+     */
+    public static boolean supports(char delimiter, char quote, char quoteEscape) {
+        return delimiter < 0x80 && quote < 0x80 && quoteEscape < 0x80 && delimiter != '\n';
+    }
+
+    /**
+     * Scan all records in the given range of the buffer and add their null patterns
+     *
+     * @param buffer   holding complete records
+     * @param offset   index of the first byte to scan
+     * @param length   number of bytes to scan
+     * @param patterns receives one null pattern per record
+     * @return the number of records found
+     */
+    public int scan(byte[] buffer, int offset, int length, NullPatternDeduplicator patterns) {
+        long[] mask = patterns.createMask();
+        int limit = offset + length;
+        int i = offset;
+        int nRows = 0;
+
+        while (i < limit) {
+            byte b = buffer[i];
+            if (b == '\n') {
+                i++;
+                continue;
+            }
+            if (b == this.comment) {
+                while (i < limit && buffer[i] != '\n') i++;
+                continue;
+            }
+
+            Arrays.fill(mask, 0L);
+            int column = 0;
+            boolean blankLine = false;
+            while (true) {
+                while (i < limit && this.isBlank(buffer[i])) i++;
+
+                boolean isNull;
+                if (this.quoteEnabled && i < limit && buffer[i] == this.quote) {
+                    int contentStart = ++i;
+                    boolean escaped = false;
+                    while (i < limit) {
+                        b = buffer[i];
+                        if (b == this.quoteEscape && i + 1 < limit && buffer[i + 1] == this.quote) {
+                            escaped = true;
+                            i += 2;
+                        } else if (b == this.quote) {
+                            break;
+                        } else {
+                            i++;
+                        }
+                    }
+                    int contentEnd = i++;
+
+                    // anything but whitespace between the closing quote and the delimiter belongs to the value
+                    boolean trailingContent = false;
+                    while (i < limit && (b = buffer[i]) != this.delimiter && b != '\n') {
+                        if (!this.isBlank(b)) trailingContent = true;
+                        i++;
+                    }
+                    isNull = !trailingContent && (escaped
+                            ? this.matchesEscaped(buffer, contentStart, Math.min(contentEnd, limit))
+                            : this.matches(buffer, contentStart, Math.min(contentEnd, limit)));
+                } else {
+                    int start = i;
+                    while (i < limit && (b = buffer[i]) != this.delimiter && b != '\n') i++;
+                    int end = i;
+                    while (end > start && this.isBlank(buffer[end - 1])) end--;
+
+                    // lines containing only whitespace are treated as empty lines
+                    blankLine = column == 0 && start == end && (i >= limit || buffer[i] == '\n');
+                    isNull = this.matches(buffer, start, end);
+                }
+
+                if (isNull && column < this.nColumns)
+                    mask[column >>> 6] |= 1L << column;
+                column++;
+
+                if (i < limit && buffer[i] == this.delimiter) {
+                    i++;
+                } else {
+                    i++; // skip line break
+                    break;
+                }
+            }
+
+            if (!blankLine) {
+                patterns.add(mask, 1);
+                nRows++;
+            }
+        }
+
+        return nRows;
+    }
+
+    private boolean isBlank(byte b) {
+        return (b & 0xFF) <= ' ' && b != '\n' && b != this.delimiter;
+    }
+
+    private boolean matches(byte[] buffer, int start, int end) {
+        if (end - start != this.nullToken.length)
+            return false;
+
+        for (int i = 0; i < this.nullToken.length; i++)
+            if (buffer[start + i] != this.nullToken[i]) return false;
+
+        return true;
+    }
+
+    private boolean matchesEscaped(byte[] buffer, int start, int end) {
+        int matched = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buffer[i];
+            if (b == this.quoteEscape && i + 1 < end && buffer[i + 1] == this.quote) {
+                b = this.quote;
+                i++;
+            }
+            if (matched == this.nullToken.length || this.nullToken[matched] != b)
+                return false;
+            matched++;
+        }
+
+        return matched == this.nullToken.length;
+    }
+}
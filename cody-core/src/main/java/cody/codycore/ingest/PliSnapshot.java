@@ -0,0 +1,222 @@
+package cody.codycore.ingest;
+
+import cody.codycore.Configuration;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.buffer.ImmutableRoaringBitmap;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary snapshot of the Preprocessor outputs, so repeated runs on the same dataset can skip parsing
+ * The PLIs are stored as serialized Roaring bitmaps and loaded as ImmutableRoaringBitmaps backed by the
+ * memory-mapped file. A snapshot is only valid for the dataset and parser options it was created with.
+ */
+@Slf4j
+@Value
+public class PliSnapshot {
+
+    private static final int MAGIC = 0x434F4459; // "CODY"
+    private static final int VERSION = 2; // PLIs are compacted since version 2
+    public static final String SUFFIX = ".pli";
+
+    /**
+     * Deduplicated column PLIs, a bit is set if the cell of that distinct row is null
+     */
+    List<ImmutableRoaringBitmap> columnPlis;
+
+    /**
+     * Maps each deduplicated column to its duplicate indices in the original dataset
+     */
+    List<List<Integer>> columnIndexToDuplicatesMapping;
+
+    /**
+     * Column names of the dataset, null if the dataset has no header
+     */
+    String[] columnIndexToNameMapping;
+
+    /**
+     * Total number of rows (also counting duplicates)
+     */
+    int nRows;
+
+    /**
+     * Maps each distinct row index to how often that row pattern has been found
+     */
+    int[] rowCounts;
+
+    /**
+     * Describe everything a snapshot depends on: the dataset's path, size and modification time as well as
+     * all options that change what the Preprocessor reads
+     */
+    public static String createKey(@NonNull Configuration configuration) throws IOException {
+        Path path = Paths.get(configuration.getPath()).toAbsolutePath().normalize();
+        return String.join("\u0000",
+                path.toString(),
+                Long.toString(Files.size(path)),
+                Long.toString(Files.getLastModifiedTime(path).toMillis()),
+                Integer.toString(configuration.getDelimiter()),
+                Integer.toString(configuration.getQuoteChar()),
+                Integer.toString(configuration.getSkipLines()),
+                Integer.toString(configuration.getRowLimit()),
+                Integer.toString(configuration.getColLimit()),
+                Boolean.toString(configuration.isNoHeader()),
+                configuration.getNullValue());
+    }
+
+    /**
+     * Resolve the snapshot file of a key, datasets with the same name stay apart by the hashed key
+     */
+    public static Path resolveFile(@NonNull Path cacheDirectory, @NonNull Configuration configuration,
+                                   @NonNull String key) {
+        String fileName = Paths.get(configuration.getPath()).getFileName().toString();
+        String hash = Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString().substring(0, 16);
+        return cacheDirectory.resolve(fileName + "-" + hash + SUFFIX);
+    }
+
+    /**
+     * Map a snapshot file and check that it has been written for the given key
+     *
+     * @return the snapshot, or null if the file does not exist, belongs to another key or is corrupt
+     */
+    public static PliSnapshot load(@NonNull Path file, @NonNull String key) {
+        return read(file, key);
+    }
+
+    /**
+     * Map a snapshot file regardless of the key it has been written for, e.g. a snapshot of a generated dataset
+     *
+     * @return the snapshot, or null if the file does not exist or is corrupt
+     */
+    public static PliSnapshot load(@NonNull Path file) {
+        return read(file, null);
+    }
+
+    private static PliSnapshot read(Path file, String key) {
+        if (!Files.isRegularFile(file))
+            return null;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the mapping stays valid after closing the channel, the bitmaps keep it reachable
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            String snapshotKey = buffer.getInt() == MAGIC && buffer.getInt() == VERSION ? readString(buffer) : null;
+            if (snapshotKey == null || key != null && !key.equals(snapshotKey)) {
+                log.info("Snapshot {} is outdated, dataset will be parsed again", file);
+                return null;
+            }
+
+            int nRows = buffer.getInt();
+
+            int nNames = buffer.getInt();
+            String[] names = null;
+            if (nNames != -1) {
+                names = new String[nNames];
+                for (int i = 0; i < nNames; i++)
+                    names[i] = readString(buffer);
+            }
+
+            int[] rowCounts = new int[buffer.getInt()];
+            buffer.asIntBuffer().get(rowCounts);
+            buffer.position(buffer.position() + rowCounts.length * Integer.BYTES);
+
+            int nPlis = buffer.getInt();
+            List<List<Integer>> duplicates = new ArrayList<>(nPlis);
+            for (int i = 0; i < nPlis; i++) {
+                List<Integer> columns = new ArrayList<>();
+                for (int j = buffer.getInt(); j > 0; j--)
+                    columns.add(buffer.getInt());
+                duplicates.add(ImmutableList.copyOf(columns));
+            }
+
+            List<ImmutableRoaringBitmap> plis = new ArrayList<>(nPlis);
+            for (int i = 0; i < nPlis; i++) {
+                ImmutableRoaringBitmap pli = new ImmutableRoaringBitmap(buffer.slice());
+                buffer.position(buffer.position() + pli.serializedSizeInBytes());
+                plis.add(pli);
+            }
+
+            return new PliSnapshot(ImmutableList.copyOf(plis), ImmutableList.copyOf(duplicates), names, nRows,
+                    rowCounts);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not read snapshot {}, dataset will be parsed again", file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Write this snapshot for the given key, the file is replaced atomically so concurrent runs never see
+     * a partially written snapshot
+     */
+    public void write(@NonNull Path file, @NonNull String key) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(),
+                ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, key);
+            out.writeInt(this.nRows);
+
+            if (this.columnIndexToNameMapping == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(this.columnIndexToNameMapping.length);
+                for (String name : this.columnIndexToNameMapping)
+                    writeString(out, name);
+            }
+
+            out.writeInt(this.rowCounts.length);
+            for (int count : this.rowCounts)
+                out.writeInt(count);
+
+            out.writeInt(this.columnPlis.size());
+            for (List<Integer> columns : this.columnIndexToDuplicatesMapping) {
+                out.writeInt(columns.size());
+                for (int column : columns)
+                    out.writeInt(column);
+            }
+
+            for (ImmutableRoaringBitmap pli : this.columnPlis)
+                pli.serialize(out);
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining())
+            throw new BufferUnderflowException();
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
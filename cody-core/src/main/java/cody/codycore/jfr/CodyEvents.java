@@ -0,0 +1,67 @@
+package cody.codycore.jfr;
+
+import cody.codycore.candidate.CheckedColumnCombination;
+import cody.codycore.metrics.LevelMetrics;
+import lombok.experimental.UtilityClass;
+
+/**
+ * Java 8 stand-in for the custom Java Flight Recorder events of Cody, every begin method returns null and every end
+ * method does nothing
+ * The events need the jdk.jfr API of Java 11, so they are compiled from src/main/java11 into META-INF/versions/11 of
+ * the multi-release jar, where this class is replaced by the one emitting them. Both classes must keep the same
+ * methods.
+ */
+@UtilityClass
+public class CodyEvents {
+
+    /**
+     * Handle of a started event
+     */
+    public interface Span {
+    }
+
+    public Span beginChunkParsed() {
+        return null;
+    }
+
+    public void endChunkParsed(Span span, long offset, long size, int rows, int distinctPatterns) {
+    }
+
+    public Span beginSupportMatrix() {
+        return null;
+    }
+
+    public void endSupportMatrix(Span span, int columns, long size) {
+    }
+
+    public Span beginCandidateCheck() {
+        return null;
+    }
+
+    public void endCandidateCheck(Span span, CheckedColumnCombination c, boolean derivedFromParent) {
+    }
+
+    public Span beginCandidateBatch() {
+        return null;
+    }
+
+    public void endCandidateBatch(Span span, int level, int candidates, int valid) {
+    }
+
+    public Span beginGraphSearch() {
+        return null;
+    }
+
+    /**
+     * @param kind either components or cliques
+     */
+    public void endGraphSearch(Span span, String kind, int vertices, int found) {
+    }
+
+    public Span beginLatticeLevel() {
+        return null;
+    }
+
+    public void endLatticeLevel(Span span, int level, LevelMetrics metrics, int spilledRuns) {
+    }
+}
@@ -0,0 +1,103 @@
+package cody.codycore.metrics;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Follows the garbage collections of the JVM to measure allocations, heap peaks and the live heap of all threads
+ * Each collection frees the difference of the heap usage before and after it, so the bytes allocated between two
+ * points in time are the difference of the heap usage plus everything collected in between. This also counts the
+ * allocations of worker threads that have ended meanwhile. Collections are reported asynchronously, one that
+ * finishes right before a phase ends may be missed.
+ */
+public final class GcMonitor implements NotificationListener {
+
+    private static final GcMonitor INSTANCE = new GcMonitor();
+
+    private final Set<String> heapPools;
+    private final AtomicLong collectedBytes;
+    private final Set<RunMetrics.Phase> activePhases;
+    private volatile long liveHeap;
+
+    private GcMonitor() {
+        this.heapPools = new HashSet<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP) {
+                this.heapPools.add(pool.getName());
+                if (pool.getCollectionUsage() != null) this.liveHeap += pool.getCollectionUsage().getUsed();
+            }
+        this.collectedBytes = new AtomicLong();
+        this.activePhases = ConcurrentHashMap.newKeySet();
+
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans())
+            if (collector instanceof NotificationEmitter)
+                ((NotificationEmitter) collector).addNotificationListener(this, null, null);
+    }
+
+    public static GcMonitor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Total bytes freed by all garbage collections reported so far
+     */
+    long getCollectedBytes() {
+        return this.collectedBytes.get();
+    }
+
+    /**
+     * Heap in use after the latest garbage collection reported so far, unlike the current heap usage this does not
+     * count garbage allocated since then, 0 before the first collection
+     */
+    public long getLiveHeap() {
+        return this.liveHeap;
+    }
+
+    long getUsedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    void addPhase(RunMetrics.Phase phase) {
+        this.activePhases.add(phase);
+    }
+
+    void removePhase(RunMetrics.Phase phase) {
+        this.activePhases.remove(phase);
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType()))
+            return;
+
+        GcInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData()).getGcInfo();
+        long before = this.sumHeapPools(info.getMemoryUsageBeforeGc());
+        long after = this.sumHeapPools(info.getMemoryUsageAfterGc());
+        this.collectedBytes.addAndGet(Math.max(0L, before - after));
+        this.liveHeap = after;
+        for (RunMetrics.Phase phase : this.activePhases)
+            phase.updatePeakHeap(before);
+    }
+
+    private long sumHeapPools(Map<String, MemoryUsage> usages) {
+        long used = 0L;
+        for (Map.Entry<String, MemoryUsage> usage : usages.entrySet())
+            if (this.heapPools.contains(usage.getKey())) used += usage.getValue().getUsed();
+        return used;
+    }
+}
@@ -0,0 +1,71 @@
+package cody.codycore.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Candidate counts of one level of the lattice traversal, i.e. of all candidates with the same number of columns
+ * Counts are updated concurrently by the workers checking the candidates.
+ */
+public class LevelMetrics {
+
+    private final LongAdder generated = new LongAdder();
+    private final LongAdder validated = new LongAdder();
+    private final LongAdder pruned = new LongAdder();
+    private final LongAdder unchecked = new LongAdder();
+    private final LongAdder valid = new LongAdder();
+
+    public void addGenerated(long n) {
+        this.generated.add(n);
+    }
+
+    public void incrementValidated() {
+        this.validated.increment();
+    }
+
+    public void incrementPruned() {
+        this.pruned.increment();
+    }
+
+    public void incrementUnchecked() {
+        this.unchecked.increment();
+    }
+
+    public void incrementValid() {
+        this.valid.increment();
+    }
+
+    /**
+     * Number of candidates of this level, optimistic candidates and subsets of invalid candidates
+     */
+    public long getGenerated() {
+        return this.generated.sum();
+    }
+
+    /**
+     * Number of candidates whose support has been checked
+     */
+    public long getValidated() {
+        return this.validated.sum();
+    }
+
+    /**
+     * Number of candidates skipped because the superset index has a valid superset
+     */
+    public long getPruned() {
+        return this.pruned.sum();
+    }
+
+    /**
+     * Number of candidates skipped because the budget was exhausted
+     */
+    public long getUnchecked() {
+        return this.unchecked.sum();
+    }
+
+    /**
+     * Number of checked candidates reaching the minimum support
+     */
+    public long getValid() {
+        return this.valid.sum();
+    }
+}
@@ -0,0 +1,39 @@
+package cody.codycore.metrics;
+
+import lombok.Value;
+
+import java.util.concurrent.TimeUnit;
+
+@Value
+public class PhaseMetrics {
+
+    /**
+     * Name of the phase, e.g. preprocessing
+     */
+    String name;
+
+    /**
+     * Elapsed time in ns
+     */
+    long wallTime;
+
+    /**
+     * CPU time of the whole process in ns, i.e. of all threads working in parallel and also of GC and JIT threads
+     * -1 if the JVM does not report it
+     */
+    long cpuTime;
+
+    /**
+     * Bytes allocated on the heap by all threads
+     */
+    long allocatedBytes;
+
+    /**
+     * Maximum heap usage in bytes observed at the start, the end and before each garbage collection of the phase
+     */
+    long peakHeapBytes;
+
+    public long getWallTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.wallTime);
+    }
+}
@@ -0,0 +1,292 @@
+package cody.codycore.metrics;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * Metrics of a single run, filled by the runner while it proceeds and available with its results
+ * Phases are measured with startPhase, the dataset, pruning and lattice traversal figures are set by the runner.
+ */
+public class RunMetrics {
+
+    public static final String PREPROCESSING = "preprocessing";
+
+    /**
+     * Measured phases in the order they have been stopped
+     */
+    @Getter private final List<PhaseMetrics> phases;
+
+    /**
+     * Candidate counts per level of the lattice traversal, ordered by descending level
+     */
+    @Getter private final SortedMap<Integer, LevelMetrics> levels;
+
+    /**
+     * Total number of rows (also counting duplicates)
+     */
+    @Getter @Setter private int nRows;
+
+    /**
+     * Number of distinct null patterns, i.e. distinct rows
+     */
+    @Getter @Setter private int nDistinctRows;
+
+    /**
+     * Number of columns in the dataset
+     */
+    @Getter @Setter private int nColumns;
+
+    /**
+     * Number of columns after removing duplicate columns
+     */
+    @Getter @Setter private int nDeduplicatedColumns;
+
+    /**
+     * Serialized size of the column PLIs before compaction
+     */
+    @Getter @Setter private long columnPliBytes;
+
+    /**
+     * Serialized size of the column PLIs after compaction
+     */
+    @Getter @Setter private long compactedColumnPliBytes;
+
+    /**
+     * Serialized size of all computed pairwise PLIs before compaction, recomputed PLIs are counted again
+     */
+    @Getter @Setter private long pairPliBytes;
+
+    /**
+     * Serialized size of all computed pairwise PLIs after compaction
+     */
+    @Getter @Setter private long compactedPairPliBytes;
+
+    /**
+     * Size of the matrix with the supports of all column pairs
+     */
+    @Getter @Setter private long pairMatrixBytes;
+
+    /**
+     * Number of bipartite components found while colouring vertices
+     */
+    @Getter @Setter private int nComponents;
+
+    /**
+     * Number of maximal cliques found, 0 without clique search
+     */
+    @Getter @Setter private int nCliques;
+
+    /**
+     * Number of optimistic candidates the lattice traversal starts with
+     */
+    @Getter @Setter private int nOptimisticCandidates;
+
+    /**
+     * Number of maximal valid ColumnCombinations pushed into the result sink
+     */
+    @Getter @Setter private int nResults;
+
+    /**
+     * Indicates if all candidates have been checked, i.e. no budget has been exhausted
+     */
+    @Getter @Setter private boolean complete;
+
+    public RunMetrics() {
+        this.phases = Collections.synchronizedList(new ArrayList<>());
+        this.levels = new ConcurrentSkipListMap<>(Collections.reverseOrder());
+    }
+
+    /**
+     * Start measuring a phase, it is added to the phases when it is stopped
+     * Phases may be nested, e.g. a phase for the complete run.
+     */
+    public Phase startPhase(@NonNull String name) {
+        return new Phase(name);
+    }
+
+    /**
+     * Get the metrics of the first phase with the given name, null if no such phase has been stopped
+     */
+    public PhaseMetrics getPhase(@NonNull String name) {
+        synchronized (this.phases) {
+            for (PhaseMetrics phase : this.phases)
+                if (phase.getName().equals(name)) return phase;
+        }
+        return null;
+    }
+
+    /**
+     * Get the metrics of a level, they are created on first access
+     */
+    public LevelMetrics getLevel(int level) {
+        return this.levels.computeIfAbsent(level, k -> new LevelMetrics());
+    }
+
+    /**
+     * Sum up a count of all levels, e.g. sumLevels(LevelMetrics::getPruned)
+     */
+    public long sumLevels(@NonNull ToLongFunction<LevelMetrics> count) {
+        return this.levels.values().stream().mapToLong(count).sum();
+    }
+
+    /**
+     * Rows read per second during preprocessing, NaN if preprocessing has not been measured
+     */
+    public double getRowsPerSecond() {
+        PhaseMetrics preprocessing = this.getPhase(PREPROCESSING);
+        if (preprocessing == null || preprocessing.getWallTime() == 0)
+            return Double.NaN;
+
+        return this.nRows * 1e9 / preprocessing.getWallTime();
+    }
+
+    /**
+     * Share of lookups in the index of valid supersets that found one and pruned the candidate, NaN without lookups
+     * Every candidate of the traversal is looked up before it is checked or skipped for an exhausted budget.
+     */
+    public double getSupersetHitRate() {
+        long hits = this.sumLevels(LevelMetrics::getPruned);
+        long lookups = hits + this.sumLevels(LevelMetrics::getValidated) + this.sumLevels(LevelMetrics::getUnchecked);
+        return lookups == 0 ? Double.NaN : (double) hits / lookups;
+    }
+
+    /**
+     * Write the metrics as a single JSON object to the given file
+     */
+    public void write(@NonNull Path file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(this.toJson());
+            writer.newLine();
+        }
+    }
+
+    /**
+     * Format the metrics as a single JSON object, NaN values are written as null
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"phases\":[");
+        synchronized (this.phases) {
+            for (int i = 0; i < this.phases.size(); i++) {
+                PhaseMetrics phase = this.phases.get(i);
+                json.append(i == 0 ? "{" : ",{");
+                json.append("\"name\":\"").append(phase.getName()).append('"');
+                json.append(",\"wallTimeNanos\":").append(phase.getWallTime());
+                json.append(",\"cpuTimeNanos\":").append(phase.getCpuTime());
+                json.append(",\"allocatedBytes\":").append(phase.getAllocatedBytes());
+                json.append(",\"peakHeapBytes\":").append(phase.getPeakHeapBytes()).append('}');
+            }
+        }
+        json.append("],\"rows\":").append(this.nRows);
+        json.append(",\"rowsPerSecond\":");
+        appendJson(json, this.getRowsPerSecond());
+        json.append(",\"distinctRows\":").append(this.nDistinctRows);
+        json.append(",\"columns\":").append(this.nColumns);
+        json.append(",\"deduplicatedColumns\":").append(this.nDeduplicatedColumns);
+        json.append(",\"columnPliBytes\":").append(this.columnPliBytes);
+        json.append(",\"compactedColumnPliBytes\":").append(this.compactedColumnPliBytes);
+        json.append(",\"pairPliBytes\":").append(this.pairPliBytes);
+        json.append(",\"compactedPairPliBytes\":").append(this.compactedPairPliBytes);
+        json.append(",\"pairMatrixBytes\":").append(this.pairMatrixBytes);
+        json.append(",\"components\":").append(this.nComponents);
+        json.append(",\"cliques\":").append(this.nCliques);
+        json.append(",\"optimisticCandidates\":").append(this.nOptimisticCandidates);
+
+        json.append(",\"levels\":[");
+        boolean first = true;
+        for (Map.Entry<Integer, LevelMetrics> entry : this.levels.entrySet()) {
+            LevelMetrics level = entry.getValue();
+            json.append(first ? "{" : ",{");
+            json.append("\"level\":").append(entry.getKey());
+            json.append(",\"generated\":").append(level.getGenerated());
+            json.append(",\"validated\":").append(level.getValidated());
+            json.append(",\"pruned\":").append(level.getPruned());
+            json.append(",\"unchecked\":").append(level.getUnchecked());
+            json.append(",\"valid\":").append(level.getValid()).append('}');
+            first = false;
+        }
+        json.append("],\"supersetHitRate\":");
+        appendJson(json, this.getSupersetHitRate());
+        json.append(",\"results\":").append(this.nResults);
+        json.append(",\"complete\":").append(this.complete).append('}');
+        return json.toString();
+    }
+
+    private static void appendJson(StringBuilder json, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            json.append("null");
+        } else {
+            json.append(value);
+        }
+    }
+
+    private static long getProcessCpuTime() {
+        OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+        if (bean instanceof com.sun.management.OperatingSystemMXBean)
+            return ((com.sun.management.OperatingSystemMXBean) bean).getProcessCpuTime();
+        return -1L;
+    }
+
+    /**
+     * A running phase, the heap peak is updated by the GcMonitor while it runs
+     */
+    public class Phase {
+
+        private final String name;
+        private final long startTime;
+        private final long startCpuTime;
+        private final long startUsedHeap;
+        private final long startCollectedBytes;
+        private final AtomicLong peakHeapBytes;
+
+        private Phase(String name) {
+            GcMonitor monitor = GcMonitor.getInstance();
+            this.name = name;
+            this.startCollectedBytes = monitor.getCollectedBytes();
+            this.startUsedHeap = monitor.getUsedHeap();
+            this.peakHeapBytes = new AtomicLong(this.startUsedHeap);
+            this.startCpuTime = getProcessCpuTime();
+            this.startTime = System.nanoTime();
+            monitor.addPhase(this);
+        }
+
+        void updatePeakHeap(long usedHeap) {
+            this.peakHeapBytes.accumulateAndGet(usedHeap, Math::max);
+        }
+
+        /**
+         * Stop the phase and add its metrics to the run
+         */
+        public PhaseMetrics stop() {
+            long wallTime = System.nanoTime() - this.startTime;
+            long cpuTime = this.startCpuTime < 0 ? -1L : getProcessCpuTime() - this.startCpuTime;
+            GcMonitor monitor = GcMonitor.getInstance();
+            monitor.removePhase(this);
+            long usedHeap = monitor.getUsedHeap();
+            this.updatePeakHeap(usedHeap);
+            long allocatedBytes = usedHeap - this.startUsedHeap + monitor.getCollectedBytes() -
+                    this.startCollectedBytes;
+
+            PhaseMetrics metrics = new PhaseMetrics(this.name, wallTime, cpuTime, Math.max(0L, allocatedBytes),
+                    this.peakHeapBytes.get());
+            RunMetrics.this.phases.add(metrics);
+            return metrics;
+        }
+    }
+}
@@ -1,21 +1,31 @@
 package cody.codycore.pruning;
 
+import ch.javasoft.bitset.BitSetFactory;
+import ch.javasoft.bitset.LongBitSet;
 import cody.codycore.Configuration;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
+import cody.codycore.SupportMatrix;
+import cody.codycore.jfr.CodyEvents;
 import lombok.NonNull;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 @Slf4j
 public class CliquePruner extends ComponentPruner {
 
-    public CliquePruner(@NonNull List<List<Double>> graph, @NonNull Configuration configuration) {
-        super(graph, configuration);
+    /**
+     * Adjacency rows of the clique graph, built once before the search
+     */
+    private LongBitSet[] neighbours;
+
+    public CliquePruner(@NonNull SupportMatrix graph, @NonNull Configuration configuration,
+                        @NonNull BitSetFactory bitSetFactory) {
+        super(graph, configuration, bitSetFactory);
     }
 
     /**
@@ -24,71 +34,177 @@ public class CliquePruner extends ComponentPruner {
      */
     @Override
     public void run() {
+        CodyEvents.Span componentEvent = CodyEvents.beginGraphSearch();
         this.searchComponents();
-        log.info("Found {} components while colouring vertices", this.intermediateResultSet.size());
+        this.nComponents = this.intermediateResultSet.size();
+        CodyEvents.endGraphSearch(componentEvent, "components", this.graph.size(), this.nComponents);
+        log.info("Found {} components while colouring vertices", this.nComponents);
 
         // clear resultSet found during vertex coloring
         this.intermediateResultSet.clear();
+        CodyEvents.Span cliqueEvent = CodyEvents.beginGraphSearch();
         this.searchCliques();
+        this.nCliques = this.intermediateResultSet.size();
+        CodyEvents.endGraphSearch(cliqueEvent, "cliques", this.graph.size(), this.nCliques);
         this.buildCandidates();
         log.info("Found {} optimistic candidates", this.resultSet.size());
     }
 
     /**
      * Implementation of the Bron-Kerbosch clique enumeration algorithm
+     * Candidate and excluded sets are bitsets over precomputed adjacency rows, each call branches only on the
+     * candidates that are not adjacent to the pivot with the most candidate neighbours (Tomita et al.) and the
+     * top level visits the vertices in degeneracy order (Eppstein et al.) to keep the candidate sets small.
      *
      * Bron, Coen; Kerbosch, Joep (1973), "Algorithm 457: finding all cliques of an undirected graph"
      * Commun. ACM, ACM, 16 (9): 575–577
      * doi:10.1145/362342.362367.
      *
+     * Tomita, Etsuji; Tanaka, Akira; Takahashi, Haruhisa (2006), "The worst-case time complexity for generating
+     * all maximal cliques and computational experiments"
+     * Theoretical Computer Science, 363 (1): 28–42
+     * doi:10.1016/j.tcs.2006.06.015.
+     *
+     * Eppstein, David; Löffler, Maarten; Strash, Darren (2010), "Listing all maximal cliques in sparse graphs in
+     * near-optimal time"
+     * ISAAC 2010, LNCS 6506: 403–414
+     * doi:10.1007/978-3-642-17517-6_36.
      */
     private void searchCliques() {
-        this.searchCliquesCallRec(this.intermediateResultSet, new ArrayList<>(),
-                IntStream.range(0, this.graph.size()).boxed().collect(Collectors.toList()),
-                new ArrayList<>());
+        double minSupport = this.configuration.getMinSupport();
+        this.neighbours = this.createNeighbourMasks(s -> s >= minSupport || s <= 1 - minSupport);
+
+        LongBitSet candidates = new LongBitSet(this.graph.size());
+        for (int i = 0; i < this.graph.size(); i++)
+            candidates.set(i);
+        LongBitSet excluded = new LongBitSet(this.graph.size());
+
+        // every top-level branch only depends on its own candidate and excluded sets
+        List<Branch> branches = new ArrayList<>();
+        for (int vertex : this.getDegeneracyOrdering()) {
+            branches.add(new Branch(vertex, LongBitSet.getAnd(candidates, this.neighbours[vertex]),
+                    LongBitSet.getAnd(excluded, this.neighbours[vertex])));
+            candidates.clear(vertex);
+            excluded.set(vertex);
+        }
+
+        if (this.configuration.isParallelCliqueSearch() && this.configuration.getParallelism() > 1) {
+            this.searchBranchesInParallel(branches);
+        } else {
+            for (Branch branch : branches)
+                this.intermediateResultSet.addAll(this.searchBranch(branch));
+        }
+    }
+
+    /**
+     * Enumerate each branch as a fork-join task with its own result list, the lists are merged in the order of
+     * the branches so the result is the same as with a sequential search
+     */
+    private void searchBranchesInParallel(final List<Branch> branches) {
+        ForkJoinPool pool = new ForkJoinPool(this.configuration.getParallelism());
+        try {
+            List<ForkJoinTask<List<List<Integer>>>> tasks = new ArrayList<>(branches.size());
+            for (Branch branch : branches)
+                tasks.add(pool.submit(() -> this.searchBranch(branch)));
+            for (ForkJoinTask<List<List<Integer>>> task : tasks)
+                this.intermediateResultSet.addAll(task.get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while searching cliques", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to search cliques", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private List<List<Integer>> searchBranch(final Branch branch) {
+        List<List<Integer>> aggregator = new ArrayList<>();
+        List<Integer> clique = new ArrayList<>();
+        clique.add(branch.getVertex());
+        this.searchCliquesCallRec(aggregator, clique, branch.getCandidates(), branch.getExcluded());
+        return aggregator;
     }
 
     private void searchCliquesCallRec(final List<List<Integer>> aggregator, final List<Integer> clique,
-                                      final List<Integer> candidates, final List<Integer> excluded) {
-        if (candidates.isEmpty() && excluded.isEmpty()) {
-            if (this.cliqueHasTwoColours(clique))
-                aggregator.add(clique);
+                                      final LongBitSet candidates, final LongBitSet excluded) {
+        if (candidates.isEmpty()) {
+            if (excluded.isEmpty() && this.cliqueHasTwoColours(clique))
+                aggregator.add(new ArrayList<>(clique));
             return;
         }
 
-        List<Integer> pivotedCandidates = Lists.newArrayList(candidates);
-        for (int n : this.getAllNeighbours(!candidates.isEmpty() ? candidates.get(0) : excluded.get(0)))
-            pivotedCandidates.remove(Integer.valueOf(n));
-
-        for (int i : pivotedCandidates) {
-            List<Integer> newClique = new ArrayList<>(clique);
-            newClique.add(i);
+        LongBitSet pivotedCandidates = candidates.clone();
+        pivotedCandidates.andNot(this.neighbours[this.choosePivot(candidates, excluded)]);
 
-            List<Integer> neighbours = this.getAllNeighbours(i);
-            List<Integer> newCandidates = Lists.newArrayList(candidates);
-            newCandidates.retainAll(neighbours);
+        for (int i = pivotedCandidates.nextSetBit(0); i >= 0; i = pivotedCandidates.nextSetBit(i + 1)) {
+            clique.add(i);
+            this.searchCliquesCallRec(aggregator, clique,
+                    LongBitSet.getAnd(candidates, this.neighbours[i]),
+                    LongBitSet.getAnd(excluded, this.neighbours[i]));
+            clique.remove(clique.size() - 1);
 
-            List<Integer> newExcluded = Lists.newArrayList(excluded);
-            newExcluded.retainAll(neighbours);
+            candidates.clear(i);
+            excluded.set(i);
+        }
+    }
 
-            this.searchCliquesCallRec(aggregator, newClique, newCandidates, newExcluded);
-            candidates.remove(Integer.valueOf(i));
-            excluded.add(i);
+    /**
+     * Choose the vertex of candidates and excluded that is adjacent to the most candidates
+     */
+    private int choosePivot(final LongBitSet candidates, final LongBitSet excluded) {
+        int pivot = -1;
+        int maxDegree = -1;
+        for (LongBitSet vertices : new LongBitSet[]{candidates, excluded}) {
+            for (int i = vertices.nextSetBit(0); i >= 0; i = vertices.nextSetBit(i + 1)) {
+                int degree = candidates.getAndCardinality(this.neighbours[i]);
+                if (degree > maxDegree) {
+                    pivot = i;
+                    maxDegree = degree;
+                }
+            }
         }
+        return pivot;
     }
 
-    private List<Integer> getAllNeighbours(final int vertex) {
-        return IntStream
-                .range(0, this.graph.size())
-                .filter(i -> i != vertex)
-                .filter(i -> this.graph.get(vertex).get(i) >= this.configuration.getMinSupport() ||
-                        this.graph.get(vertex).get(i) <= 1 - this.configuration.getMinSupport())
-                .boxed()
-                .collect(Collectors.toList());
+    /**
+     * Order the vertices by repeatedly removing a vertex of minimum degree from the remaining graph
+     */
+    private int[] getDegeneracyOrdering() {
+        int size = this.graph.size();
+        int[] degrees = new int[size];
+        for (int i = 0; i < size; i++)
+            degrees[i] = this.neighbours[i].cardinality();
+
+        int[] ordering = new int[size];
+        boolean[] removed = new boolean[size];
+        for (int k = 0; k < size; k++) {
+            int vertex = -1;
+            for (int i = 0; i < size; i++)
+                if (!removed[i] && (vertex == -1 || degrees[i] < degrees[vertex])) vertex = i;
+
+            ordering[k] = vertex;
+            removed[vertex] = true;
+            LongBitSet row = this.neighbours[vertex];
+            for (int i = row.nextSetBit(0); i >= 0; i = row.nextSetBit(i + 1))
+                degrees[i]--;
+        }
+        return ordering;
     }
 
     private boolean cliqueHasTwoColours(final List<Integer> clique) {
         return clique.stream().anyMatch(i -> this.vertexColouring[i] % 2 == 0) &&
                 clique.stream().anyMatch(j -> this.vertexColouring[j] % 2 != 0);
     }
+
+    /**
+     * Top-level call of the clique search: a vertex with its later neighbours as candidates and its earlier
+     * neighbours as excluded vertices
+     */
+    @Value
+    private static class Branch {
+        int vertex;
+        LongBitSet candidates;
+        LongBitSet excluded;
+    }
 }
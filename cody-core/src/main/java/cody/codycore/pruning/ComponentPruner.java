@@ -1,8 +1,12 @@
 package cody.codycore.pruning;
 
+import ch.javasoft.bitset.BitSetFactory;
+import ch.javasoft.bitset.IBitSet;
 import ch.javasoft.bitset.LongBitSet;
 import cody.codycore.Configuration;
+import cody.codycore.SupportMatrix;
 import cody.codycore.candidate.ColumnCombination;
+import cody.codycore.jfr.CodyEvents;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.MultimapBuilder;
 import lombok.Getter;
@@ -11,14 +15,18 @@ import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.function.DoublePredicate;
 
 @Slf4j
 public class ComponentPruner {
 
-    protected final List<List<Double>> graph;
+    protected final SupportMatrix graph;
     protected final Configuration configuration;
+
+    /**
+     * Creates the column sets of the candidates, narrow enough for the number of columns in the graph
+     */
+    protected final BitSetFactory bitSetFactory;
     protected final int[] vertexColouring;
     protected final LongBitSet visited;
     protected final List<List<Integer>> intermediateResultSet;
@@ -28,9 +36,21 @@ public class ComponentPruner {
      */
     @Getter protected final Multimap<Integer, ColumnCombination> resultSet;
 
-    public ComponentPruner(@NonNull List<List<Double>> graph, @NonNull Configuration configuration) {
+    /**
+     * Number of bipartite components found while colouring vertices
+     */
+    @Getter protected int nComponents;
+
+    /**
+     * Number of maximal cliques with both colours found, 0 without clique search
+     */
+    @Getter protected int nCliques;
+
+    public ComponentPruner(@NonNull SupportMatrix graph, @NonNull Configuration configuration,
+                           @NonNull BitSetFactory bitSetFactory) {
         this.graph = graph;
         this.configuration = configuration;
+        this.bitSetFactory = bitSetFactory;
         this.intermediateResultSet = new ArrayList<>();
         this.vertexColouring = new int[graph.size()];
         this.visited = new LongBitSet();
@@ -42,48 +62,87 @@ public class ComponentPruner {
      * When finished, the result is available with getResultSet
      */
     public void run() {
+        CodyEvents.Span event = CodyEvents.beginGraphSearch();
         this.searchComponents();
-        log.info("Found {} components while colouring vertices", this.intermediateResultSet.size());
+        this.nComponents = this.intermediateResultSet.size();
+        CodyEvents.endGraphSearch(event, "components", this.graph.size(), this.nComponents);
+        log.info("Found {} components while colouring vertices", this.nComponents);
         this.buildCandidates();
         log.info("Found {} optimistic candidates", this.resultSet.size());
     }
 
     /**
-     * Implementation of a BFS with a two colouring of the bipartite components
+     * Implementation of a DFS with a two colouring of the bipartite components
      * (Subgraphs are expected to be bipartite; no validation)
+     * The DFS keeps an explicit stack of vertices and the neighbour to continue with, so long chains of
+     * complementary columns do not overflow the call stack
      */
     protected void searchComponents() {
+        double minSupport = this.configuration.getMinSupport();
+        LongBitSet[] complementNeighbours = this.createNeighbourMasks(s -> s >= minSupport);
+
+        int[] stack = new int[this.graph.size()];
+        int[] nextNeighbour = new int[this.graph.size()];
+
         // run a DFS for each unvisited vertex
         for (int i = 0; i < this.graph.size(); i++) {
-            if (!this.visited.get(i)) {
-                List<Integer> aggregator = new ArrayList<>();
-                this.intermediateResultSet.add(aggregator);
-                this.searchComponentsCallRec(aggregator, i, 1);
+            if (this.visited.get(i)) continue;
+
+            List<Integer> aggregator = new ArrayList<>();
+            this.intermediateResultSet.add(aggregator);
+            this.visitVertex(aggregator, i, 1);
+
+            int depth = 0;
+            stack[depth] = i;
+            nextNeighbour[depth] = 0;
+            while (depth >= 0) {
+                int vertex = stack[depth];
+                LongBitSet neighbours = complementNeighbours[vertex];
+                int neighbour = neighbours.nextSetBit(nextNeighbour[depth]);
+                while (neighbour >= 0 && this.visited.get(neighbour))
+                    neighbour = neighbours.nextSetBit(neighbour + 1);
+
+                if (neighbour < 0) {
+                    depth--;
+                    continue;
+                }
+
+                nextNeighbour[depth] = neighbour + 1;
+                this.visitVertex(aggregator, neighbour, this.vertexColouring[vertex] + 1);
+                depth++;
+                stack[depth] = neighbour;
+                nextNeighbour[depth] = 0;
             }
         }
     }
 
-    protected void searchComponentsCallRec(final List<Integer> aggregator, final int vertex, final int colouring) {
+    private void visitVertex(final List<Integer> aggregator, final int vertex, final int colouring) {
         if (this.vertexColouring[vertex] != 0) throw new InternalError("Vertex has already been visited");
 
         this.vertexColouring[vertex] = colouring;
         this.visited.set(vertex);
         aggregator.add(vertex);
+    }
 
-        for (int neighbour : this.getComplementNeighbours(vertex)) {
-            if (!this.visited.get(neighbour)) {
-                this.searchComponentsCallRec(aggregator, neighbour, colouring + 1);
+    /**
+     * Build the adjacency rows of the graph once, row i has bit j set if the support between columns i and j
+     * is an edge (a vertex is never its own neighbour)
+     */
+    protected LongBitSet[] createNeighbourMasks(final DoublePredicate isEdge) {
+        int size = this.graph.size();
+        LongBitSet[] masks = new LongBitSet[size];
+        for (int i = 0; i < size; i++)
+            masks[i] = new LongBitSet(size);
+
+        for (int i = 0; i < size; i++) {
+            for (int j = i + 1; j < size; j++) {
+                if (isEdge.test(this.graph.get(i, j))) {
+                    masks[i].set(j);
+                    masks[j].set(i);
+                }
             }
         }
-    }
-
-    protected List<Integer> getComplementNeighbours(final int vertex) {
-        return IntStream
-                .range(0, this.graph.size())
-                .filter(i -> i != vertex)
-                .filter(i -> this.graph.get(vertex).get(i) >= this.configuration.getMinSupport())
-                .boxed()
-                .collect(Collectors.toList());
+        return masks;
     }
 
     protected void buildCandidates() {
@@ -91,8 +150,8 @@ public class ComponentPruner {
         for (List<Integer> component : this.intermediateResultSet) {
             if (component.size() == 1) continue;
 
-            LongBitSet left = new LongBitSet();
-            LongBitSet right = new LongBitSet();
+            IBitSet left = this.bitSetFactory.create(this.graph.size());
+            IBitSet right = this.bitSetFactory.create(this.graph.size());
             for (int i : component) {
                 if ((this.vertexColouring[i] % 2) == 0) {
                     left.set(i);
@@ -1,11 +1,11 @@
 package cody.codycore.pruning;
 
+import ch.javasoft.bitset.BitSetFactory;
 import cody.codycore.Configuration;
+import cody.codycore.SupportMatrix;
 import lombok.NonNull;
 import lombok.experimental.UtilityClass;
 
-import java.util.List;
-
 @UtilityClass
 public class PrunerFactory {
 
@@ -14,13 +14,15 @@ public class PrunerFactory {
      *
      * @param configuration's minSupport property is used to determine best Pruner
      * @param graph with which the Pruner will be initialized
+     * @param bitSetFactory creates the column sets of the candidates
      * @return the optimal Pruner
      */
-    public ComponentPruner create(@NonNull Configuration configuration, @NonNull List<List<Double>> graph) {
+    public ComponentPruner create(@NonNull Configuration configuration, @NonNull SupportMatrix graph,
+                                  @NonNull BitSetFactory bitSetFactory) {
         if (configuration.isNoCliqueSearch() || configuration.getMinSupport() == 1.0) {
-            return new ComponentPruner(graph, configuration);
+            return new ComponentPruner(graph, configuration, bitSetFactory);
         } else {
-            return new CliquePruner(graph, configuration);
+            return new CliquePruner(graph, configuration, bitSetFactory);
         }
     }
 }
@@ -1,100 +1,215 @@
 package cody.codycore.runner;
 
-import ch.javasoft.bitset.search.TreeSearch;
+import ch.javasoft.bitset.BitSetFactories;
+import ch.javasoft.bitset.BitSetFactory;
+import ch.javasoft.bitset.IBitSet;
+import ch.javasoft.bitset.search.ConcurrentTreeSearch;
 import cody.codycore.Configuration;
 import cody.codycore.Preprocessor;
 import cody.codycore.Validator;
+import cody.codycore.candidate.CandidateFrontier;
 import cody.codycore.candidate.CheckedColumnCombination;
 import cody.codycore.candidate.ColumnCombination;
 import cody.codycore.candidate.ColumnCombinationUtils;
+import cody.codycore.jfr.CodyEvents;
+import cody.codycore.metrics.LevelMetrics;
+import cody.codycore.metrics.RunMetrics;
 import cody.codycore.pruning.ComponentPruner;
 import cody.codycore.pruning.PrunerFactory;
-import com.google.common.base.Stopwatch;
+import cody.codycore.sink.ResultSink;
 import com.google.common.collect.Multimap;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.ArrayList;
+import java.nio.file.Paths;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Slf4j
 public class ApproximateRunner extends BaseRunner {
 
-    public ApproximateRunner(@NonNull Configuration configuration) {
-        super(configuration);
+    /**
+     * Number of candidates per level that have not been checked because the budget was exhausted
+     * Lower levels only count the candidates known when the run stopped, i.e. no subsets of unchecked candidates
+     */
+    @Getter private final SortedMap<Integer, Integer> uncheckedCandidates;
+
+    public ApproximateRunner(@NonNull Configuration configuration, @NonNull ResultSink resultSink) {
+        super(configuration, resultSink);
+        if (configuration.isWorkStealingTraversal() && configuration.hasBudget())
+            throw new IllegalArgumentException("The work-stealing traversal cannot run with a time or memory budget");
+        this.uncheckedCandidates = new TreeMap<>(Collections.reverseOrder());
+    }
+
+    /**
+     * Indicates if the lattice traversal has checked all candidates, i.e. the result set is complete
+     */
+    public boolean isComplete() {
+        return this.uncheckedCandidates.isEmpty();
     }
 
     /**
      * Run the approximate Cody algorithm with the set configuration
-     * When finished, the results can be retrieved with getResultSet
+     * Results are pushed into the result sink as soon as they are confirmed
+     * If the time or memory budget is exhausted during the lattice traversal, the remaining candidates are skipped
+     * and the result set holds all maximal Codys confirmed so far
      */
     @Override
     public void run() {
-        Stopwatch completeWatch = Stopwatch.createStarted();
+        Budget budget = new Budget(this.configuration);
+        RunMetrics.Phase completePhase = this.metrics.startPhase("complete");
         log.info("Start running approximate Cody algorithm with configuration: {}", this.configuration);
 
-        Stopwatch prepareWatch = Stopwatch.createStarted();
+        RunMetrics.Phase preparePhase = this.metrics.startPhase(RunMetrics.PREPROCESSING);
         Preprocessor preprocessor = new Preprocessor(this.configuration);
         preprocessor.run();
-        log.info("Preprocessing took: {} ms", prepareWatch.stop().elapsed(TimeUnit.MILLISECONDS));
+        log.info("Preprocessing took: {} ms", preparePhase.stop().getWallTimeMillis());
+        this.recordDataset(preprocessor);
+        this.resultSink.open(preprocessor.getColumnIndexToNameMapping());
 
-        Stopwatch validatorWatch = Stopwatch.createStarted();
+        RunMetrics.Phase validatorPhase = this.metrics.startPhase("unaryValidation");
         Validator validator = new Validator(this.configuration, preprocessor.getColumnPlis(),
                 preprocessor.getNRows(), preprocessor.getRowCounts());
-        log.info("Unary candidate validation took: {} ms", validatorWatch.stop().elapsed(TimeUnit.MILLISECONDS));
+        log.info("Unary candidate validation took: {} ms", validatorPhase.stop().getWallTimeMillis());
 
-        Stopwatch prunerWatch = Stopwatch.createStarted();
-        ComponentPruner pruner = PrunerFactory.create(this.configuration, validator.getGraphView());
+        RunMetrics.Phase prunerPhase = this.metrics.startPhase("pruning");
+        BitSetFactory bitSetFactory = BitSetFactories.forCapacity(preprocessor.getColumnPlis().size());
+        log.info("Using {} for candidates", bitSetFactory.getBitSetClass().getSimpleName());
+        ComponentPruner pruner = PrunerFactory.create(this.configuration, validator.getGraphView(), bitSetFactory);
         pruner.run();
 
         Multimap<Integer, ColumnCombination> optimisticCandidates = pruner.getResultSet();
-        int maxCardinality = optimisticCandidates.isEmpty() ? 0 : Collections.max(optimisticCandidates.keySet());
-        log.info("Estimating upper bounds took: {} ms", prunerWatch.stop().elapsed(TimeUnit.MILLISECONDS));
+        log.info("Estimating upper bounds took: {} ms", prunerPhase.stop().getWallTimeMillis());
+        this.recordPruner(validator, pruner);
+
+        RunMetrics.Phase traversalPhase = this.metrics.startPhase("traversal");
+        if (this.configuration.isWorkStealingTraversal()) {
+            WorkStealingTraversal traversal = new WorkStealingTraversal(this.configuration, validator, this.metrics,
+                    preprocessor.getColumnPlis().size(), bitSetFactory);
+            traversal.run(optimisticCandidates, c -> this.publish(ColumnCombinationUtils.inflateDuplicateColumns(c,
+                    preprocessor.getColumnIndexToDuplicatesMapping())));
+        } else {
+            this.traverseLevelWise(optimisticCandidates, validator, budget,
+                    () -> new CandidateFrontier(preprocessor.getColumnPlis().size(), bitSetFactory,
+                            this.configuration.isOffHeapFrontier(), this.configuration.getSpillThreshold(),
+                            this.configuration.getSpillDirectory() == null ? null
+                                    : Paths.get(this.configuration.getSpillDirectory())),
+                    preprocessor.getColumnIndexToDuplicatesMapping());
+        }
+        log.info("Candidate validation took: {} ms", traversalPhase.stop().getWallTimeMillis());
+        if (!this.isComplete())
+            log.warn("{} exhausted, the result set is partial. Unchecked candidates per level: {}",
+                    budget.getReason(), this.uncheckedCandidates);
+
+        log.info("Pairwise PLI cache: {}", validator.getPliCacheStats());
+        log.info("Partial intersection cache: {}", validator.getPartialIntersectionCacheStats());
+        log.info("Compacted pairwise PLIs from {} to {} bytes", validator.getPairPliBytes(),
+                validator.getCompactedPairPliBytes());
+        this.recordPairPlis(validator);
+
+        log.info("Complete approximate Cody algorithm took: {} ms", completePhase.stop().getWallTimeMillis());
+        this.metrics.setNResults(this.nResults);
+        this.metrics.setComplete(this.isComplete());
+
+        log.info("ResultSet with {} Codys", this.nResults);
+    }
 
-        Stopwatch latticeTraversal = Stopwatch.createStarted();
-        List<ColumnCombination> currentLevelCandidates = new ArrayList<>();
-        TreeSearch maximalValidColumnCombinations = new TreeSearch();
+    /**
+     * Check the candidates level by level, starting with the largest optimistic candidates
+     * Each level is a CandidateFrontier, it is checked batch by batch while the subsets of invalid candidates are added
+     * to the next level. Valid candidates are published and added to the superset index right after their batch: all
+     * candidates with more columns have been checked on earlier levels, so a Cody is maximal as soon as it is confirmed.
+     */
+    private void traverseLevelWise(Multimap<Integer, ColumnCombination> optimisticCandidates, Validator validator,
+                                   Budget budget, Supplier<CandidateFrontier> frontierSupplier,
+                                   List<List<Integer>> columnIndexToDuplicatesMapping) {
+        int maxCardinality = optimisticCandidates.isEmpty() ? 0 : Collections.max(optimisticCandidates.keySet());
+        CandidateFrontier currentLevelCandidates = frontierSupplier.get();
+        ConcurrentTreeSearch maximalValidColumnCombinations = new ConcurrentTreeSearch();
         for (int level = maxCardinality; level >= 2; level--) {
-            currentLevelCandidates.addAll(optimisticCandidates.get(level));
-
-            log.info("At level: {} with: {} candidates", level, currentLevelCandidates.size());
-            List<CheckedColumnCombination> checkedCurrentLevelCandidates = currentLevelCandidates
-                    .parallelStream()
-                    .map(validator::checkColumnCombination)
-                    .collect(Collectors.toList());
-
-            checkedCurrentLevelCandidates
-                    .stream()
-                    .filter(c -> c.getSupport() >= this.configuration.getMinSupport())
-                    .forEach(c -> {
-                        maximalValidColumnCombinations.add(c.getColumns());
-                        this.resultSet.add(c);
-                        log.debug("Found valid candidate: {}", c);
-                    });
-
-            currentLevelCandidates = checkedCurrentLevelCandidates
-                    .parallelStream()
-                    .filter(c -> c.getSupport() < this.configuration.getMinSupport())
-                    .flatMap(c -> ColumnCombinationUtils.getImmediateSubsets(c).stream())
-                    .distinct()
-                    .filter(c -> maximalValidColumnCombinations.findSuperSet(c.getColumns()) == null)
-                    .collect(Collectors.toList());
+            CodyEvents.Span levelEvent = CodyEvents.beginLatticeLevel();
+            for (ColumnCombination c : optimisticCandidates.get(level))
+                currentLevelCandidates.add(c);
+
+            int nRuns = currentLevelCandidates.getNumberOfRuns();
+            if (nRuns > 0)
+                log.info("At level: {} with: {} candidates in {} spilled runs", level, currentLevelCandidates.size(),
+                        nRuns);
+            else
+                log.info("At level: {} with: {} candidates", level, currentLevelCandidates.size());
+            final CandidateFrontier next = frontierSupplier.get();
+            LevelMetrics levelMetrics = this.metrics.getLevel(level);
+            levelMetrics.addGenerated(currentLevelCandidates.size());
+            // once the budget is exhausted the remaining candidates are skipped
+            final int currentLevel = level;
+            currentLevelCandidates.forEachBatch(batch -> {
+                CodyEvents.Span batchEvent = CodyEvents.beginCandidateBatch();
+                List<CheckedColumnCombination> validBatchCandidates = batch
+                        .parallelStream()
+                        .map(candidate -> {
+                            ColumnCombination c = candidate.getColumnCombination();
+                            if (hasStrictSuperSet(maximalValidColumnCombinations, c.getColumns())) {
+                                levelMetrics.incrementPruned();
+                                return null;
+                            }
+                            if (budget.isExhausted()) {
+                                levelMetrics.incrementUnchecked();
+                                return null;
+                            }
+
+                            CheckedColumnCombination checked = candidate.getParent() != null
+                                    ? validator.checkColumnCombination(c, candidate.getParent(),
+                                    this.configuration.getMinSupport())
+                                    : validator.checkColumnCombination(c, this.configuration.getMinSupport());
+                            levelMetrics.incrementValidated();
+                            if (checked.getSupport() >= this.configuration.getMinSupport()) {
+                                levelMetrics.incrementValid();
+                                return checked;
+                            }
+
+                            // remember one parent per subset, its partial intersections are reused to check the subset
+                            // parents which stopped early are far below minSupport, so are their subsets and the
+                            // threshold-aware check is cheaper for them
+                            ColumnCombination parent = checked.isUpperBound() ? null : c;
+                            for (ColumnCombination subset : ColumnCombinationUtils.getImmediateSubsets(checked))
+                                next.add(subset, parent);
+                            return null;
+                        })
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList());
+                for (CheckedColumnCombination c : validBatchCandidates) {
+                    maximalValidColumnCombinations.add(c.getColumns());
+                    this.publish(ColumnCombinationUtils.inflateDuplicateColumns(c, columnIndexToDuplicatesMapping));
+                    log.debug("Found valid candidate: {}", c);
+                }
+                CodyEvents.endCandidateBatch(batchEvent, currentLevel, batch.size(), validBatchCandidates.size());
+            });
+            validator.invalidatePartialIntersections();
+            log.debug("Pruned {} candidates at level: {} by a valid superset", levelMetrics.getPruned(), level);
+
+            if (levelMetrics.getUnchecked() > 0)
+                this.uncheckedCandidates.put(level, (int) levelMetrics.getUnchecked());
+
+            CodyEvents.endLatticeLevel(levelEvent, level, levelMetrics, nRuns);
+            currentLevelCandidates = next;
         }
-        log.info("Candidate validation took: {} ms", latticeTraversal.stop().elapsed(TimeUnit.MILLISECONDS));
-
-        Stopwatch postProcessingWatch = Stopwatch.createStarted();
-        this.resultSet = this.resultSet.stream().map(c -> ColumnCombinationUtils.inflateDuplicateColumns(c,
-                preprocessor.getColumnIndexToDuplicatesMapping())).collect(Collectors.toList());
-        log.info("Candidate post-processing took: {} ms", postProcessingWatch.stop().elapsed(TimeUnit.MILLISECONDS));
-
-        log.info("Complete approximate Cody algorithm took: {} ms",
-                completeWatch.stop().elapsed(TimeUnit.MILLISECONDS));
+        currentLevelCandidates.deleteRuns();
+    }
 
-        log.info("ResultSet with {} Codys:", this.resultSet.size());
-        for (CheckedColumnCombination c : this.resultSet)
-            log.info("{}", c.toString(preprocessor.getColumnIndexToNameMapping()));
+    /**
+     * Indicates if a Cody with more columns than the given set has been published
+     * Codys of earlier batches of the same level with the same columns do not prune the set. The first of them has
+     * only been checked because there was no larger Cody, so a search returning such a set instead of a larger one
+     * does not miss one.
+     */
+    private static boolean hasStrictSuperSet(ConcurrentTreeSearch maximalValidColumnCombinations, IBitSet columns) {
+        IBitSet superSet = maximalValidColumnCombinations.findSuperSet(columns);
+        return superSet != null && !superSet.equals(columns);
     }
 }
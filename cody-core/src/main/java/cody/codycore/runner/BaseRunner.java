@@ -1,11 +1,15 @@
 package cody.codycore.runner;
 
 import cody.codycore.Configuration;
+import cody.codycore.Preprocessor;
+import cody.codycore.Validator;
 import cody.codycore.candidate.CheckedColumnCombination;
+import cody.codycore.metrics.RunMetrics;
+import cody.codycore.pruning.ComponentPruner;
+import cody.codycore.sink.ResultSink;
 import lombok.Getter;
 import lombok.NonNull;
 
-import java.util.ArrayList;
 import java.util.List;
 
 public abstract class BaseRunner {
@@ -13,14 +17,63 @@ public abstract class BaseRunner {
     protected final Configuration configuration;
 
     /**
-     * Contains all maximal valid ColumnCombinations
+     * Receives all maximal valid ColumnCombinations as soon as they are confirmed
      */
-    @Getter protected List<CheckedColumnCombination> resultSet;
+    @Getter protected final ResultSink resultSink;
 
-    public BaseRunner(@NonNull Configuration configuration) {
+    /**
+     * Number of maximal valid ColumnCombinations pushed into the result sink
+     */
+    @Getter protected int nResults;
+
+    /**
+     * Timings, memory usage and counts of the stages, filled while the runner proceeds
+     */
+    @Getter protected final RunMetrics metrics;
+
+    public BaseRunner(@NonNull Configuration configuration, @NonNull ResultSink resultSink) {
         this.configuration = configuration;
-        this.resultSet = new ArrayList<>();
+        this.resultSink = resultSink;
+        this.metrics = new RunMetrics();
     }
 
     public abstract void run();
+
+    /**
+     * Record the figures of the dataset once it has been preprocessed
+     */
+    protected void recordDataset(Preprocessor preprocessor) {
+        this.metrics.setNRows(preprocessor.getNRows());
+        this.metrics.setNDistinctRows(preprocessor.getRowCounts().length);
+        this.metrics.setNColumns(preprocessor.getColumnIndexToDuplicatesMapping().stream().mapToInt(List::size).sum());
+        this.metrics.setNDeduplicatedColumns(preprocessor.getColumnPlis().size());
+        this.metrics.setColumnPliBytes(preprocessor.getColumnPliBytes());
+        this.metrics.setCompactedColumnPliBytes(preprocessor.getCompactedColumnPliBytes());
+    }
+
+    /**
+     * Record the figures of the pruning stage once it has finished
+     */
+    protected void recordPruner(Validator validator, ComponentPruner pruner) {
+        this.metrics.setPairMatrixBytes(validator.getGraphView().getSizeInBytes());
+        this.metrics.setNComponents(pruner.getNComponents());
+        this.metrics.setNCliques(pruner.getNCliques());
+        this.metrics.setNOptimisticCandidates(pruner.getResultSet().size());
+    }
+
+    /**
+     * Record the sizes of the pairwise PLIs once all candidates have been checked
+     */
+    protected void recordPairPlis(Validator validator) {
+        this.metrics.setPairPliBytes(validator.getPairPliBytes());
+        this.metrics.setCompactedPairPliBytes(validator.getCompactedPairPliBytes());
+    }
+
+    /**
+     * Push a maximal valid ColumnCombination with inflated duplicate columns into the result sink
+     */
+    protected void publish(CheckedColumnCombination c) {
+        this.resultSink.receive(c);
+        this.nResults++;
+    }
 }
@@ -0,0 +1,64 @@
+package cody.codycore.runner;
+
+import cody.codycore.Configuration;
+import cody.codycore.metrics.GcMonitor;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time and memory limits of a run
+ * The time limit starts when the budget is created at the start of the run, so reading, preprocessing and pruning
+ * count towards it and only the remaining time is left for the lattice traversal. The memory limit applies to the
+ * heap still in use after the latest garbage collection, garbage that has not been collected yet does not count.
+ * Once a limit has been hit the budget stays exhausted, so all threads checking it stop consistently.
+ */
+public class Budget {
+
+    private static final long UNLIMITED = -1;
+
+    private final long startTime;
+    private final long timeLimit;
+    private final long memoryLimit;
+
+    private volatile boolean exhausted;
+
+    /**
+     * The limit that has been hit, null while the budget is not exhausted
+     */
+    @Getter private volatile String reason;
+
+    public Budget(@NonNull Configuration configuration) {
+        this.startTime = System.nanoTime();
+        this.timeLimit = configuration.getTimeBudget() < 0 ? UNLIMITED :
+                TimeUnit.MILLISECONDS.toNanos(configuration.getTimeBudget());
+        this.memoryLimit = configuration.getMemoryBudget() < 0 ? UNLIMITED :
+                configuration.getMemoryBudget() * 1024 * 1024;
+    }
+
+    /**
+     * Check the elapsed time and the heap in use after the latest garbage collection against the limits
+     * This is cheap enough to be called once per candidate.
+     */
+    public boolean isExhausted() {
+        if (this.exhausted)
+            return true;
+
+        if (this.timeLimit != UNLIMITED && System.nanoTime() - this.startTime >= this.timeLimit) {
+            this.exhaust("Time budget of " + TimeUnit.NANOSECONDS.toMillis(this.timeLimit) + " ms");
+        } else if (this.memoryLimit != UNLIMITED && GcMonitor.getInstance().getLiveHeap() > this.memoryLimit) {
+            this.exhaust("Memory budget of " + this.memoryLimit / (1024 * 1024) + " MB");
+        }
+
+        return this.exhausted;
+    }
+
+    private synchronized void exhaust(String reason) {
+        if (this.exhausted)
+            return;
+
+        this.reason = reason;
+        this.exhausted = true;
+    }
+}
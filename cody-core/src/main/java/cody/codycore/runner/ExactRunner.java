@@ -1,64 +1,70 @@
 package cody.codycore.runner;
 
+import ch.javasoft.bitset.BitSetFactories;
+import ch.javasoft.bitset.BitSetFactory;
 import cody.codycore.Configuration;
 import cody.codycore.Preprocessor;
 import cody.codycore.Validator;
-import cody.codycore.candidate.CheckedColumnCombination;
 import cody.codycore.candidate.ColumnCombination;
 import cody.codycore.candidate.ColumnCombinationUtils;
+import cody.codycore.metrics.RunMetrics;
 import cody.codycore.pruning.ComponentPruner;
 import cody.codycore.pruning.PrunerFactory;
-import com.google.common.base.Stopwatch;
+import cody.codycore.sink.ResultSink;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-
 @Slf4j
 public class ExactRunner extends BaseRunner {
 
-    public ExactRunner(@NonNull Configuration configuration) {
-        super(configuration);
+    public ExactRunner(@NonNull Configuration configuration, @NonNull ResultSink resultSink) {
+        super(configuration, resultSink);
     }
 
     /**
      * Run the approximate Cody algorithm with the set configuration
-     * When finished, the results can be retrieved with getResultSet
+     * Results are pushed into the result sink as soon as they are confirmed
      */
     @Override
     public void run() {
-        Stopwatch completeWatch = Stopwatch.createStarted();
+        RunMetrics.Phase completePhase = this.metrics.startPhase("complete");
         log.info("Start running exact Cody algorithm with configuration: {}", this.configuration);
 
-        Stopwatch prepareWatch = Stopwatch.createStarted();
+        RunMetrics.Phase preparePhase = this.metrics.startPhase(RunMetrics.PREPROCESSING);
         Preprocessor preprocessor = new Preprocessor(this.configuration);
         preprocessor.run();
-        log.info("Preprocessing took: {} ms", prepareWatch.stop().elapsed(TimeUnit.MILLISECONDS));
+        log.info("Preprocessing took: {} ms", preparePhase.stop().getWallTimeMillis());
+        this.recordDataset(preprocessor);
+        this.resultSink.open(preprocessor.getColumnIndexToNameMapping());
 
-        Stopwatch validatorWatch = Stopwatch.createStarted();
+        RunMetrics.Phase validatorPhase = this.metrics.startPhase("unaryValidation");
         Validator validator = new Validator(this.configuration, preprocessor.getColumnPlis(),
                 preprocessor.getNRows(), preprocessor.getRowCounts());
-        log.info("Unary candidate validation took: {} ms", validatorWatch.stop().elapsed(TimeUnit.MILLISECONDS));
+        log.info("Unary candidate validation took: {} ms", validatorPhase.stop().getWallTimeMillis());
 
-        Stopwatch prunerWatch = Stopwatch.createStarted();
-        ComponentPruner pruner = PrunerFactory.create(this.configuration, validator.getGraphView());
+        RunMetrics.Phase prunerPhase = this.metrics.startPhase("pruning");
+        BitSetFactory bitSetFactory = BitSetFactories.forCapacity(preprocessor.getColumnPlis().size());
+        log.info("Using {} for candidates", bitSetFactory.getBitSetClass().getSimpleName());
+        ComponentPruner pruner = PrunerFactory.create(this.configuration, validator.getGraphView(), bitSetFactory);
         pruner.run();
-        log.info("Expanding unary to maximal Cody took: {} ms", prunerWatch.stop().elapsed(TimeUnit.MILLISECONDS));
+        log.info("Expanding unary to maximal Cody took: {} ms", prunerPhase.stop().getWallTimeMillis());
+        this.recordPruner(validator, pruner);
 
-        Stopwatch postProcessingWatch = Stopwatch.createStarted();
-        for (ColumnCombination c : pruner.getResultSet().values())
-            this.resultSet.add(validator.checkColumnCombination(c));
+        log.info("Pairwise PLI cache: {}", validator.getPliCacheStats());
 
-        this.resultSet = this.resultSet.stream().map(c -> ColumnCombinationUtils.inflateDuplicateColumns(c,
-                preprocessor.getColumnIndexToDuplicatesMapping())).collect(Collectors.toList());
-        log.info("Candidate post-processing took: {} ms", postProcessingWatch.stop().elapsed(TimeUnit.MILLISECONDS));
+        RunMetrics.Phase postProcessingPhase = this.metrics.startPhase("postProcessing");
+        for (ColumnCombination c : pruner.getResultSet().values())
+            this.publish(ColumnCombinationUtils.inflateDuplicateColumns(validator.checkColumnCombination(c),
+                    preprocessor.getColumnIndexToDuplicatesMapping()));
+        log.info("Candidate post-processing took: {} ms", postProcessingPhase.stop().getWallTimeMillis());
+        log.info("Compacted pairwise PLIs from {} to {} bytes", validator.getPairPliBytes(),
+                validator.getCompactedPairPliBytes());
+        this.recordPairPlis(validator);
 
-        log.info("Complete approximate Cody algorithm took: {} ms",
-                completeWatch.stop().elapsed(TimeUnit.MILLISECONDS));
+        log.info("Complete approximate Cody algorithm took: {} ms", completePhase.stop().getWallTimeMillis());
+        this.metrics.setNResults(this.nResults);
+        this.metrics.setComplete(true);
 
-        log.info("ResultSet with {} Codys:", this.getResultSet().size());
-        for (CheckedColumnCombination c : this.getResultSet())
-            log.info("{}", c.toString(preprocessor.getColumnIndexToNameMapping()));
+        log.info("ResultSet with {} Codys", this.nResults);
     }
 }
@@ -0,0 +1,235 @@
+package cody.codycore.runner;
+
+import ch.javasoft.bitset.BitSetFactory;
+import ch.javasoft.bitset.IBitSet;
+import ch.javasoft.bitset.search.ConcurrentTreeSearch;
+import ch.javasoft.bitset.search.TreeSearch;
+import cody.codycore.Configuration;
+import cody.codycore.Validator;
+import cody.codycore.candidate.CandidateFrontier;
+import cody.codycore.candidate.CheckedColumnCombination;
+import cody.codycore.candidate.ColumnCombination;
+import cody.codycore.candidate.ColumnCombinationUtils;
+import cody.codycore.metrics.LevelMetrics;
+import cody.codycore.metrics.RunMetrics;
+import com.google.common.collect.Multimap;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Consumer;
+
+/**
+ * Lattice traversal without level barriers: every candidate check is a fork-join task, an invalid candidate forks
+ * the checks of its immediate subsets right away and idle workers steal them
+ * Subsets are deduplicated through a CandidateFrontier of all visited candidates and skipped if a valid superset has
+ * been found before they are checked. As a superset may be confirmed after its subset, a valid candidate is held back
+ * until no candidate with more columns is pending, i.e. visited but not yet checked, and no larger candidate can be
+ * visited anymore. It is then published unless a published candidate contains it, like in the level-wise traversal.
+ * There is no time or memory budget: the traversal goes deep before it has checked the large candidates, so a partial
+ * result would hardly hold a candidate known to be maximal.
+ */
+@Slf4j
+public class WorkStealingTraversal {
+
+    private final Configuration configuration;
+    private final Validator validator;
+
+    private final CandidateFrontier visited;
+    private final ConcurrentTreeSearch validColumnCombinations;
+    private final RunMetrics metrics;
+
+    /**
+     * Number of visited candidates per cardinality whose check has not finished yet, subsets are counted before
+     * their parent is finished, so once a level and all levels above it are zero they stay zero
+     */
+    private final AtomicIntegerArray pendingCandidates;
+
+    /**
+     * Valid candidates per level that wait for the pending candidates with more columns, guarded by this
+     */
+    private final SortedMap<Integer, List<CheckedColumnCombination>> heldCandidates;
+
+    /**
+     * Columns of the published candidates above the level currently published, guarded by this
+     */
+    private final TreeSearch largerColumnCombinations;
+    private final List<IBitSet> publishedColumnCombinations;
+    private int publishedLevel;
+    private Consumer<CheckedColumnCombination> publisher;
+
+    public WorkStealingTraversal(@NonNull Configuration configuration, @NonNull Validator validator,
+                                 @NonNull RunMetrics metrics, int nColumns, @NonNull BitSetFactory bitSetFactory) {
+        this.configuration = configuration;
+        this.validator = validator;
+        this.visited = new CandidateFrontier(nColumns, bitSetFactory, configuration.isOffHeapFrontier());
+        this.validColumnCombinations = new ConcurrentTreeSearch();
+        this.metrics = metrics;
+        this.pendingCandidates = new AtomicIntegerArray(nColumns + 1);
+        this.heldCandidates = new TreeMap<>(Collections.reverseOrder());
+        this.largerColumnCombinations = new TreeSearch();
+        this.publishedColumnCombinations = new ArrayList<>();
+        this.publishedLevel = nColumns + 1;
+    }
+
+    /**
+     * Check all optimistic candidates and their subsets
+     * Maximal valid candidates are passed to the publisher as soon as no larger candidate can contain them, one at a
+     * time from the worker threads and by descending cardinality
+     *
+     * @param optimisticCandidates mapping of cardinality to candidates, e.g. the result of a ComponentPruner
+     * @param publisher            receives the maximal valid candidates
+     */
+    public void run(@NonNull Multimap<Integer, ColumnCombination> optimisticCandidates,
+                    @NonNull Consumer<CheckedColumnCombination> publisher) {
+        this.publisher = publisher;
+        // start with the largest candidates, their valid results prune most subsets
+        List<CheckTask> tasks = new ArrayList<>();
+        List<Integer> levels = new ArrayList<>(optimisticCandidates.keySet());
+        levels.sort(Collections.reverseOrder());
+        for (int level : levels) {
+            for (ColumnCombination c : optimisticCandidates.get(level)) {
+                if (this.visited.add(c)) {
+                    this.metrics.getLevel(level).addGenerated(1);
+                    this.pendingCandidates.incrementAndGet(level);
+                    tasks.add(new CheckTask(c, null));
+                }
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(this.configuration.getParallelism());
+        try {
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+        } finally {
+            pool.shutdown();
+            // tasks check the subsets of a parent at any time, so its partial intersections are only known to be
+            // unused once all tasks have finished; until then the cache's weight limit bounds them
+            this.validator.invalidatePartialIntersections();
+        }
+
+        this.publishConfirmed();
+        log.info("Checked {} of {} visited candidates, {} were pruned by a valid superset",
+                this.metrics.sumLevels(LevelMetrics::getValidated), this.visited.size(),
+                this.metrics.sumLevels(LevelMetrics::getPruned));
+    }
+
+    private synchronized void hold(CheckedColumnCombination c) {
+        this.heldCandidates.computeIfAbsent(c.getColumns().cardinality(), level -> new ArrayList<>()).add(c);
+    }
+
+    /**
+     * Publish the held candidates of all levels without pending candidates above them, from the highest level down
+     * Candidates of the same level cannot contain each other, so a level is published while its own candidates are
+     * still pending. The columns of a level only prune lower levels once the traversal has moved below it.
+     */
+    private synchronized void publishConfirmed() {
+        int highestPendingLevel = this.highestPendingLevel();
+        while (!this.heldCandidates.isEmpty() && this.heldCandidates.firstKey() >= highestPendingLevel) {
+            int level = this.heldCandidates.firstKey();
+            if (level < this.publishedLevel) {
+                for (IBitSet columns : this.publishedColumnCombinations)
+                    this.largerColumnCombinations.add(columns);
+                this.publishedColumnCombinations.clear();
+                this.publishedLevel = level;
+            }
+            for (CheckedColumnCombination c : this.heldCandidates.remove(level)) {
+                if (this.largerColumnCombinations.findSuperSet(c.getColumns()) == null) {
+                    this.publishedColumnCombinations.add(c.getColumns());
+                    this.publisher.accept(c);
+                }
+            }
+        }
+    }
+
+    private int highestPendingLevel() {
+        for (int level = this.pendingCandidates.length() - 1; level > 0; level--)
+            if (this.pendingCandidates.get(level) > 0)
+                return level;
+        return 0;
+    }
+
+    /**
+     * Indicates if a valid candidate with more columns than the given set has been found
+     * If a valid candidate with the same columns has been found, it may be returned by the search instead of a larger
+     * one and the set is not pruned; it is then not published if the larger one is.
+     */
+    private boolean hasStrictSuperSet(IBitSet columns) {
+        IBitSet superSet = this.validColumnCombinations.findSuperSet(columns);
+        return superSet != null && !superSet.equals(columns);
+    }
+
+    private class CheckTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ColumnCombination candidate;
+
+        /**
+         * Exactly checked parent whose partial intersections are reused, null for optimistic candidates and
+         * subsets of parents whose check stopped early
+         */
+        private final ColumnCombination parent;
+
+        CheckTask(ColumnCombination candidate, ColumnCombination parent) {
+            this.candidate = candidate;
+            this.parent = parent;
+        }
+
+        @Override
+        protected void compute() {
+            int level = this.candidate.getColumns().cardinality();
+            List<CheckTask> subsets = this.check(level);
+            if (pendingCandidates.decrementAndGet(level) == 0 || subsets == null)
+                publishConfirmed();
+            if (subsets != null)
+                invokeAll(subsets);
+        }
+
+        /**
+         * Check the candidate and create the tasks of its unvisited subsets if it is invalid
+         *
+         * @return the subset tasks, null if the candidate is valid
+         */
+        private List<CheckTask> check(int level) {
+            double minSupport = configuration.getMinSupport();
+            LevelMetrics levelMetrics = metrics.getLevel(level);
+            if (hasStrictSuperSet(this.candidate.getColumns())) {
+                levelMetrics.incrementPruned();
+                return Collections.emptyList();
+            }
+
+            CheckedColumnCombination checked = this.parent != null
+                    ? validator.checkColumnCombination(this.candidate, this.parent, minSupport)
+                    : validator.checkColumnCombination(this.candidate, minSupport);
+            levelMetrics.incrementValidated();
+
+            if (checked.getSupport() >= minSupport) {
+                levelMetrics.incrementValid();
+                validColumnCombinations.add(checked.getColumns());
+                hold(checked);
+                log.debug("Found valid candidate: {}", checked);
+                return null;
+            }
+
+            ColumnCombination parent = checked.isUpperBound() ? null : checked.getColumnCombination();
+            List<CheckTask> subsets = new ArrayList<>();
+            for (ColumnCombination subset : ColumnCombinationUtils.getImmediateSubsets(checked)) {
+                if (visited.add(subset)) {
+                    int subsetLevel = subset.getColumns().cardinality();
+                    metrics.getLevel(subsetLevel).addGenerated(1);
+                    pendingCandidates.incrementAndGet(subsetLevel);
+                    subsets.add(new CheckTask(subset, parent));
+                }
+            }
+            return subsets;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package cody.codycore.sink;
+
+import ch.javasoft.bitset.IBitSet;
+import cody.codycore.candidate.CheckedColumnCombination;
+import cody.codycore.candidate.ColumnCombinationUtils;
+import lombok.NonNull;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes each result as one line to a file, either as CSV with a header or as JSON lines
+ * CSV lines hold the left and right column names separated by semicolons and the support, JSON lines hold an object
+ * with the arrays left and right and the number support.
+ */
+public class FileResultSink implements ResultSink {
+
+    public enum Format {
+        CSV, JSON
+    }
+
+    private final Format format;
+    private final BufferedWriter writer;
+    private String[] columnIndexToNameMapping;
+
+    public FileResultSink(@NonNull Path file, @NonNull Format format) throws IOException {
+        this.format = format;
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void open(String[] columnIndexToNameMapping) {
+        this.columnIndexToNameMapping = columnIndexToNameMapping;
+        if (this.format == Format.CSV)
+            this.writeLine("left,right,support");
+    }
+
+    @Override
+    public void receive(@NonNull CheckedColumnCombination c) {
+        List<String> left = this.getColumnNames(c.getLeft());
+        List<String> right = this.getColumnNames(c.getRight());
+
+        StringBuilder line = new StringBuilder();
+        if (this.format == Format.CSV) {
+            appendCsv(line, String.join(";", left));
+            line.append(',');
+            appendCsv(line, String.join(";", right));
+            line.append(',').append(c.getSupport());
+        } else {
+            line.append("{\"left\":");
+            appendJson(line, left);
+            line.append(",\"right\":");
+            appendJson(line, right);
+            line.append(",\"support\":").append(c.getSupport()).append('}');
+        }
+        this.writeLine(line.toString());
+    }
+
+    @Override
+    public void close() {
+        try {
+            this.writer.close();
+        } catch (IOException e) {
+            throw new ResultSinkException("Could not close result file", e);
+        }
+    }
+
+    private List<String> getColumnNames(IBitSet columns) {
+        List<String> names = new ArrayList<>(columns.cardinality());
+        for (int i = columns.nextSetBit(0); i != -1; i = columns.nextSetBit(i + 1))
+            names.add(ColumnCombinationUtils.getColumnName(this.columnIndexToNameMapping, i));
+        return names;
+    }
+
+    private void writeLine(String line) {
+        try {
+            this.writer.write(line);
+            this.writer.newLine();
+        } catch (IOException e) {
+            throw new ResultSinkException("Could not write result", e);
+        }
+    }
+
+    private static void appendCsv(StringBuilder line, String value) {
+        if (value.indexOf(',') == -1 && value.indexOf('"') == -1 && value.indexOf('\n') == -1 &&
+                value.indexOf('\r') == -1) {
+            line.append(value);
+            return;
+        }
+
+        line.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    private static void appendJson(StringBuilder line, List<String> values) {
+        line.append('[');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) line.append(',');
+            line.append('"');
+            for (char ch : values.get(i).toCharArray()) {
+                if (ch == '"' || ch == '\\') {
+                    line.append('\\').append(ch);
+                } else if (ch < 0x20) {
+                    line.append(String.format("\\u%04x", (int) ch));
+                } else {
+                    line.append(ch);
+                }
+            }
+            line.append('"');
+        }
+        line.append(']');
+    }
+}
@@ -0,0 +1,21 @@
+package cody.codycore.sink;
+
+import cody.codycore.candidate.CheckedColumnCombination;
+import lombok.Getter;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects all results in memory
+ */
+public class ListResultSink implements ResultSink {
+
+    @Getter private final List<CheckedColumnCombination> results = new ArrayList<>();
+
+    @Override
+    public void receive(@NonNull CheckedColumnCombination c) {
+        this.results.add(c);
+    }
+}
@@ -0,0 +1,24 @@
+package cody.codycore.sink;
+
+import cody.codycore.candidate.CheckedColumnCombination;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Logs each result with the column names of the dataset
+ */
+@Slf4j
+public class LogResultSink implements ResultSink {
+
+    private String[] columnIndexToNameMapping;
+
+    @Override
+    public void open(String[] columnIndexToNameMapping) {
+        this.columnIndexToNameMapping = columnIndexToNameMapping;
+    }
+
+    @Override
+    public void receive(@NonNull CheckedColumnCombination c) {
+        log.info("{}", c.toString(this.columnIndexToNameMapping));
+    }
+}
@@ -0,0 +1,32 @@
+package cody.codycore.sink;
+
+import cody.codycore.candidate.CheckedColumnCombination;
+import lombok.NonNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives the maximal valid Codys of a run as soon as they are confirmed, duplicate columns are already inflated
+ * Runners push results one after another, never concurrently but possibly from different threads. The creator of a
+ * sink is responsible for closing it.
+ */
+public interface ResultSink extends Closeable {
+
+    /**
+     * Called once before the first result is pushed
+     *
+     * @param columnIndexToNameMapping column names of the dataset, null if the dataset has no header
+     */
+    default void open(String[] columnIndexToNameMapping) {
+    }
+
+    /**
+     * Receive a maximal valid Cody, IO errors are rethrown as ResultSinkException
+     */
+    void receive(@NonNull CheckedColumnCombination c);
+
+    @Override
+    default void close() throws IOException {
+    }
+}
@@ -0,0 +1,14 @@
+package cody.codycore.sink;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * IO error of a ResultSink, so callers can tell failures of the output apart from other IO errors of a run
+ */
+public class ResultSinkException extends UncheckedIOException {
+
+    public ResultSinkException(String message, IOException cause) {
+        super(message, cause);
+    }
+}
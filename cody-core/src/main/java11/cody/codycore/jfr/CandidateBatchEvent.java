@@ -0,0 +1,27 @@
+package cody.codycore.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("cody.CandidateBatch")
+@Label("Candidate Batch")
+@Category({"Cody", "Validation"})
+@Description("A batch of candidates of a lattice level has been checked in parallel")
+@Threshold("1 ms")
+@StackTrace(false)
+class CandidateBatchEvent extends Event implements CodyEvents.Span {
+
+    @Label("Level")
+    int level;
+
+    @Label("Candidates")
+    int candidates;
+
+    @Label("Valid")
+    int valid;
+}
@@ -0,0 +1,31 @@
+package cody.codycore.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("cody.CandidateCheck")
+@Label("Candidate Check")
+@Category({"Cody", "Validation"})
+@Description("The support of a candidate has been checked, only slow checks are recorded by default")
+@Threshold("10 ms")
+@StackTrace(false)
+class CandidateCheckEvent extends Event implements CodyEvents.Span {
+
+    @Label("Columns")
+    int columns;
+
+    @Label("Support")
+    @Description("Exact support, or an upper bound if the check stopped early")
+    double support;
+
+    @Label("Upper Bound")
+    boolean upperBound;
+
+    @Label("Derived From Parent")
+    boolean derivedFromParent;
+}
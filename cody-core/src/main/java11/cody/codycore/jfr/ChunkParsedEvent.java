@@ -0,0 +1,33 @@
+package cody.codycore.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+@Name("cody.ChunkParsed")
+@Label("Chunk Parsed")
+@Category({"Cody", "Preprocessing"})
+@Description("A chunk of the dataset has been parsed into distinct null patterns")
+@Threshold("1 ms")
+@StackTrace(false)
+class ChunkParsedEvent extends Event implements CodyEvents.Span {
+
+    @Label("Offset")
+    @DataAmount
+    long offset;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+
+    @Label("Rows")
+    int rows;
+
+    @Label("Distinct Patterns")
+    int distinctPatterns;
+}
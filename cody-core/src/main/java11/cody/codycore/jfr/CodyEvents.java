@@ -0,0 +1,190 @@
+package cody.codycore.jfr;
+
+import cody.codycore.candidate.CheckedColumnCombination;
+import cody.codycore.metrics.LevelMetrics;
+import jdk.jfr.FlightRecorder;
+import lombok.experimental.UtilityClass;
+
+/**
+ * Emits the custom Java Flight Recorder events of Cody, which show the phase or lattice level a run spends its time in
+ * Every event is started with a begin method and committed with its fields by the matching end method, which ends
+ * the event before its threshold is checked. The event classes are only touched if the JVM ships JFR and the flight
+ * recorder has been started, otherwise begin returns null and end does nothing. While no recording is running, an
+ * event costs about as much as a short-lived allocation; fine-grained events have thresholds, so by default
+ * recordings only contain the slow ones.
+ * This class is compiled for Java 11 into META-INF/versions/11, Java 8 runs the stand-in of src/main/java instead.
+ */
+@UtilityClass
+public class CodyEvents {
+
+    /**
+     * Handle of a started event
+     */
+    public interface Span {
+    }
+
+    private final boolean AVAILABLE = isAvailable();
+
+    public Span beginChunkParsed() {
+        if (!isRecorderInitialized())
+            return null;
+
+        ChunkParsedEvent event = new ChunkParsedEvent();
+        event.begin();
+        return event;
+    }
+
+    public void endChunkParsed(Span span, long offset, long size, int rows, int distinctPatterns) {
+        if (span == null)
+            return;
+
+        ChunkParsedEvent event = (ChunkParsedEvent) span;
+        event.end();
+        if (event.shouldCommit()) {
+            event.offset = offset;
+            event.size = size;
+            event.rows = rows;
+            event.distinctPatterns = distinctPatterns;
+            event.commit();
+        }
+    }
+
+    public Span beginSupportMatrix() {
+        if (!isRecorderInitialized())
+            return null;
+
+        SupportMatrixEvent event = new SupportMatrixEvent();
+        event.begin();
+        return event;
+    }
+
+    public void endSupportMatrix(Span span, int columns, long size) {
+        if (span == null)
+            return;
+
+        SupportMatrixEvent event = (SupportMatrixEvent) span;
+        event.end();
+        if (event.shouldCommit()) {
+            event.columns = columns;
+            event.size = size;
+            event.commit();
+        }
+    }
+
+    public Span beginCandidateCheck() {
+        if (!isRecorderInitialized())
+            return null;
+
+        CandidateCheckEvent event = new CandidateCheckEvent();
+        event.begin();
+        return event;
+    }
+
+    public void endCandidateCheck(Span span, CheckedColumnCombination c, boolean derivedFromParent) {
+        if (span == null)
+            return;
+
+        CandidateCheckEvent event = (CandidateCheckEvent) span;
+        event.end();
+        if (event.shouldCommit()) {
+            event.columns = c.getColumns().cardinality();
+            event.support = c.getSupport();
+            event.upperBound = c.isUpperBound();
+            event.derivedFromParent = derivedFromParent;
+            event.commit();
+        }
+    }
+
+    public Span beginCandidateBatch() {
+        if (!isRecorderInitialized())
+            return null;
+
+        CandidateBatchEvent event = new CandidateBatchEvent();
+        event.begin();
+        return event;
+    }
+
+    public void endCandidateBatch(Span span, int level, int candidates, int valid) {
+        if (span == null)
+            return;
+
+        CandidateBatchEvent event = (CandidateBatchEvent) span;
+        event.end();
+        if (event.shouldCommit()) {
+            event.level = level;
+            event.candidates = candidates;
+            event.valid = valid;
+            event.commit();
+        }
+    }
+
+    public Span beginGraphSearch() {
+        if (!isRecorderInitialized())
+            return null;
+
+        GraphSearchEvent event = new GraphSearchEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * @param kind either components or cliques
+     */
+    public void endGraphSearch(Span span, String kind, int vertices, int found) {
+        if (span == null)
+            return;
+
+        GraphSearchEvent event = (GraphSearchEvent) span;
+        event.end();
+        if (event.shouldCommit()) {
+            event.kind = kind;
+            event.vertices = vertices;
+            event.found = found;
+            event.commit();
+        }
+    }
+
+    public Span beginLatticeLevel() {
+        if (!isRecorderInitialized())
+            return null;
+
+        LatticeLevelEvent event = new LatticeLevelEvent();
+        event.begin();
+        return event;
+    }
+
+    public void endLatticeLevel(Span span, int level, LevelMetrics metrics, int spilledRuns) {
+        if (span == null)
+            return;
+
+        LatticeLevelEvent event = (LatticeLevelEvent) span;
+        event.end();
+        if (event.shouldCommit()) {
+            event.level = level;
+            event.generated = metrics.getGenerated();
+            event.validated = metrics.getValidated();
+            event.pruned = metrics.getPruned();
+            event.unchecked = metrics.getUnchecked();
+            event.valid = metrics.getValid();
+            event.spilledRuns = spilledRuns;
+            event.commit();
+        }
+    }
+
+    /**
+     * Loading the first event class initializes JFR, which takes a few hundred ms, so events are only created once
+     * the flight recorder has been started, e.g. by -XX:StartFlightRecording or later with jcmd
+     */
+    private boolean isRecorderInitialized() {
+        return AVAILABLE && FlightRecorder.isInitialized();
+    }
+
+    private boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package cody.codycore.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("cody.GraphSearch")
+@Label("Graph Search")
+@Category({"Cody", "Pruning"})
+@Description("The components or maximal cliques of the column graph have been searched")
+@StackTrace(false)
+class GraphSearchEvent extends Event implements CodyEvents.Span {
+
+    @Label("Kind")
+    @Description("Either components or cliques")
+    String kind;
+
+    @Label("Vertices")
+    int vertices;
+
+    @Label("Found")
+    int found;
+}
@@ -0,0 +1,37 @@
+package cody.codycore.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("cody.LatticeLevel")
+@Label("Lattice Level")
+@Category({"Cody", "Lattice Traversal"})
+@Description("All candidates of a lattice level have been checked")
+@StackTrace(false)
+class LatticeLevelEvent extends Event implements CodyEvents.Span {
+
+    @Label("Level")
+    int level;
+
+    @Label("Generated")
+    long generated;
+
+    @Label("Validated")
+    long validated;
+
+    @Label("Pruned")
+    long pruned;
+
+    @Label("Unchecked")
+    long unchecked;
+
+    @Label("Valid")
+    long valid;
+
+    @Label("Spilled Runs")
+    int spilledRuns;
+}
@@ -0,0 +1,24 @@
+package cody.codycore.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("cody.SupportMatrix")
+@Label("Support Matrix")
+@Category({"Cody", "Validation"})
+@Description("The supports of all column pairs have been computed")
+@StackTrace(false)
+class SupportMatrixEvent extends Event implements CodyEvents.Span {
+
+    @Label("Columns")
+    int columns;
+
+    @Label("Size")
+    @DataAmount
+    long size;
+}
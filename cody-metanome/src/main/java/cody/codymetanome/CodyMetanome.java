@@ -1,14 +1,11 @@
 package cody.codymetanome;
 
 import cody.codycore.Configuration;
-import cody.codycore.candidate.CheckedColumnCombination;
 import cody.codycore.runner.ApproximateRunner;
 import cody.codycore.runner.BaseRunner;
 import cody.codycore.runner.ExactRunner;
 import de.metanome.algorithm_integration.AlgorithmConfigurationException;
 import de.metanome.algorithm_integration.AlgorithmExecutionException;
-import de.metanome.algorithm_integration.ColumnIdentifier;
-import de.metanome.algorithm_integration.ColumnPermutation;
 import de.metanome.algorithm_integration.algorithm_types.BooleanParameterAlgorithm;
 import de.metanome.algorithm_integration.algorithm_types.FileInputParameterAlgorithm;
 import de.metanome.algorithm_integration.algorithm_types.InclusionDependencyAlgorithm;
@@ -19,7 +16,6 @@ import de.metanome.algorithm_integration.configuration.ConfigurationRequirementF
 import de.metanome.algorithm_integration.configuration.ConfigurationRequirementString;
 import de.metanome.algorithm_integration.input.FileInputGenerator;
 import de.metanome.algorithm_integration.result_receiver.InclusionDependencyResultReceiver;
-import de.metanome.algorithm_integration.results.InclusionDependency;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -66,19 +62,18 @@ public class CodyMetanome implements StringParameterAlgorithm, BooleanParameterA
                 config.setPath(file.getInputFile().getAbsolutePath());
                 config.setNullValue(this.null_value);
 
+                // results are forwarded to metanome as soon as they are confirmed
+                List<String> columnNames = file.generateNewCopy().columnNames();
+                String tableName = file.generateNewCopy().relationName();
+                MetanomeResultSink resultSink = new MetanomeResultSink(this.resultReceiver, tableName, columnNames);
+
                 BaseRunner runner;
                 if (this.min_support == 1.0) {
-                    runner = new ExactRunner(config);
+                    runner = new ExactRunner(config, resultSink);
                 } else {
-                    runner = new ApproximateRunner(config);
+                    runner = new ApproximateRunner(config, resultSink);
                 }
                 runner.run();
-
-                // convert resultSet to metanome formats
-                List<String> columnNames = file.generateNewCopy().columnNames();
-                String tableName = file.generateNewCopy().relationName();
-                for (CheckedColumnCombination c : runner.getResultSet())
-                    this.resultReceiver.receiveResult(this.translateToMetanome(c, tableName, columnNames));
             }
         } catch (Exception e) {
             throw new AlgorithmExecutionException(e.getMessage());
@@ -132,23 +127,4 @@ public class CodyMetanome implements StringParameterAlgorithm, BooleanParameterA
     public void setResultReceiver(InclusionDependencyResultReceiver resultReceiver) {
         this.resultReceiver = resultReceiver;
     }
-
-    private InclusionDependency translateToMetanome(CheckedColumnCombination c, String tableIdentifier,
-                                                    List<String> columnIdentifiers) {
-        ColumnIdentifier[] left = new ColumnIdentifier[c.getLeft().cardinality()];
-        int index = 0;
-        for (int i = c.getLeft().nextSetBit(0); i != -1; i = c.getLeft().nextSetBit(i + 1)) {
-            left[index] = new ColumnIdentifier(tableIdentifier, columnIdentifiers.get(i));
-            index++;
-        }
-
-        ColumnIdentifier[] right = new ColumnIdentifier[c.getRight().cardinality()];
-        index = 0;
-        for (int i = c.getRight().nextSetBit(0); i != -1; i = c.getRight().nextSetBit(i + 1)) {
-            right[index] = new ColumnIdentifier(tableIdentifier, columnIdentifiers.get(i));
-            index++;
-        }
-
-        return new InclusionDependency(new ColumnPermutation(left), new ColumnPermutation(right));
-    }
 }
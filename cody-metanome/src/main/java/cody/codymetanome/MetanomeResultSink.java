@@ -0,0 +1,55 @@
+package cody.codymetanome;
+
+import cody.codycore.candidate.CheckedColumnCombination;
+import cody.codycore.sink.ResultSink;
+import de.metanome.algorithm_integration.AlgorithmExecutionException;
+import de.metanome.algorithm_integration.ColumnIdentifier;
+import de.metanome.algorithm_integration.ColumnPermutation;
+import de.metanome.algorithm_integration.result_receiver.InclusionDependencyResultReceiver;
+import de.metanome.algorithm_integration.results.InclusionDependency;
+
+import java.util.List;
+
+/**
+ * Forwards each result to a Metanome result receiver, translated to an InclusionDependency of the given table
+ */
+public class MetanomeResultSink implements ResultSink {
+
+    private final InclusionDependencyResultReceiver resultReceiver;
+    private final String tableIdentifier;
+    private final List<String> columnIdentifiers;
+
+    public MetanomeResultSink(InclusionDependencyResultReceiver resultReceiver,
+                              String tableIdentifier, List<String> columnIdentifiers) {
+        this.resultReceiver = resultReceiver;
+        this.tableIdentifier = tableIdentifier;
+        this.columnIdentifiers = columnIdentifiers;
+    }
+
+    @Override
+    public void receive(CheckedColumnCombination c) {
+        try {
+            this.resultReceiver.receiveResult(this.translateToMetanome(c));
+        } catch (AlgorithmExecutionException e) {
+            throw new IllegalStateException("Metanome did not accept the result " + c, e);
+        }
+    }
+
+    private InclusionDependency translateToMetanome(CheckedColumnCombination c) {
+        ColumnIdentifier[] left = new ColumnIdentifier[c.getLeft().cardinality()];
+        int index = 0;
+        for (int i = c.getLeft().nextSetBit(0); i != -1; i = c.getLeft().nextSetBit(i + 1)) {
+            left[index] = new ColumnIdentifier(this.tableIdentifier, this.columnIdentifiers.get(i));
+            index++;
+        }
+
+        ColumnIdentifier[] right = new ColumnIdentifier[c.getRight().cardinality()];
+        index = 0;
+        for (int i = c.getRight().nextSetBit(0); i != -1; i = c.getRight().nextSetBit(i + 1)) {
+            right[index] = new ColumnIdentifier(this.tableIdentifier, this.columnIdentifiers.get(i));
+            index++;
+        }
+
+        return new InclusionDependency(new ColumnPermutation(left), new ColumnPermutation(right));
+    }
+}